@@ -0,0 +1,59 @@
+package de.javaabc.lockpatterns.benchmark;
+
+import de.javaabc.lockpatterns.util.Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH BENCHMARK OF ALL ENGINES
+ *
+ * - Build and run with <code>mvn -B -Pjmh package &amp;&amp; java -jar target/benchmarks.jar EngineBenchmark</code>
+ * - Reports the throughput and the latency distribution of a complete count from scratch for every {@link Engine}
+ * - Select engines, grids and lengths with JMH parameters, e.g. <code>-p engine=DP,PACKED -p size=3,4 -p minLength=4</code>
+ * - BRUTEFORCE takes ~20 s per count, so it is only run when selected with <code>-p engine=BRUTEFORCE</code>
+ * - A combination of engine and grid size that the engine does not support fails at setup and is skipped
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class EngineBenchmark {
+    @Param({"TREESEARCH", "OOP", "OOP_ADVANCED", "PACKED", "DP", "LAYERED"})
+    private Engine engine;
+
+    @Param({"3"})
+    private int size;
+
+    @Param({"4"})
+    private int minLength;
+
+    @Setup
+    public void setup() {
+        if (!engine.supports(size))
+            throw new IllegalArgumentException(engine + " does not support " + size + "x" + size);
+        Cache.printProgress(false); // The progress dots of oop_advanced would end up in the measurements
+    }
+
+    /**
+     * Counts all valid patterns from scratch. The result is returned, so JMH consumes it in a blackhole.
+     *
+     * @return the total number of valid patterns
+     */
+    @Benchmark
+    public long count() {
+        return engine.count(size, minLength);
+    }
+}
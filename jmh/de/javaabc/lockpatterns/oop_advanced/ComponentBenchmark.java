@@ -0,0 +1,164 @@
+package de.javaabc.lockpatterns.oop_advanced;
+
+import de.javaabc.lockpatterns.util.Cache;
+import de.javaabc.lockpatterns.util.Grid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH MICRO BENCHMARKS OF THE BUILDING BLOCKS OF {@link Pattern}
+ *
+ * - Isolates the components that the 4x4 count spends its time in, so hot spots can be ranked before rewriting them
+ * - Build and run with <code>mvn -B -Pjmh package &amp;&amp; java -jar target/benchmarks.jar ComponentBenchmark -prof gc</code>
+ * - Reports the time per operation, and with <code>-prof gc</code> the allocated bytes per operation as
+ *   <code>gc.alloc.rate.norm</code> next to the allocation rate
+ * - Lives in the package of {@link Pattern}, since the benchmarked components are package-private
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ComponentBenchmark {
+    // The size of the grid that the sample patterns are drawn in
+    private static final int SIZE = 4;
+
+    // The length of the sample patterns
+    private static final int LENGTH = 3;
+
+    // The number of sample patterns, i.e. all sequences of LENGTH distinct nodes
+    private static final int SAMPLES = 16 * 15 * 14;
+
+    // The number of pairs of nodes in the grid
+    private static final int PAIRS = SIZE * SIZE * SIZE * SIZE;
+
+    // The number of interned nodes
+    private static final int NODES = Grid.MAX_SIZE * Grid.MAX_SIZE;
+
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<Long> states = new ArrayList<>();
+    private List<Pattern> simplified;
+    private final Grid grid = Grid.of(Grid.MAX_SIZE);
+
+    // The cache of the hit benchmark contains every key before the measurement starts
+    private final Cache<Long> filled = new Cache<>();
+
+    // The cache of the miss benchmark is emptied before every invocation, so every lookup has to compute and insert
+    private final Cache<Long> empty = new Cache<>();
+
+    @Setup
+    public void setup() {
+        Cache.printProgress(false);
+        addSamples(new Pattern(SIZE), 0, 0L, -1);
+        if (patterns.size() != SAMPLES)
+            throw new IllegalStateException("Expected " + SAMPLES + " samples, got " + patterns.size());
+
+        simplified = patterns.stream().map(Pattern::simplify).toList();
+        for (Pattern pattern : simplified)
+            filled.computeIfAbsent(() -> 0L, pattern, LENGTH, 4);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long cacheHit() {
+        long sum = 0L;
+        for (Pattern pattern : simplified)
+            sum += filled.computeIfAbsent(() -> 0L, pattern, LENGTH, 4);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long cacheMiss() {
+        empty.clear();
+        long sum = 0L;
+        for (Pattern pattern : patterns)
+            sum += empty.computeIfAbsent(() -> 1L, pattern, LENGTH, 4);
+        return sum;
+    }
+
+    /**
+     * The lookup of the nodes between two nodes, which is a precomputed blocker mask since the packed representation.
+     *
+     * @return the sum of all looked up masks
+     */
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public long nodesBetween() {
+        long sum = 0L;
+        for (int a = 0; a < SIZE * SIZE; a++)
+            for (int b = 0; b < SIZE * SIZE; b++)
+                sum += grid.blockers(grid.index(a / SIZE, a % SIZE), grid.index(b / SIZE, b % SIZE));
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long simplify() {
+        long sum = 0L;
+        for (Pattern pattern : patterns)
+            sum += pattern.simplify().hashCode();
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long canonicalize() {
+        long sum = 0L;
+        for (long state : states)
+            sum += Canonicalizer.canonicalize(Grid.mask(state), Grid.last(state));
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public long nodeAt() {
+        long sum = 0L;
+        for (int y = 0; y < Grid.MAX_SIZE; y++)
+            for (int x = 0; x < Grid.MAX_SIZE; x++)
+                sum += Pattern.Node.at(y, x).index();
+        return sum;
+    }
+
+    /**
+     * Creates every sequence of {@link #LENGTH} distinct nodes in a (SIZE x SIZE) grid recursively, regardless of
+     * whether the lines between them are valid, since the benchmarked components do not depend on that.
+     *
+     * @param pattern the pattern to extend
+     * @param length  the number of nodes in <code>pattern</code>
+     * @param used    the mask of the nodes in <code>pattern</code>, see {@link Pattern.Node#index()}
+     * @param last    the index of the last node of <code>pattern</code>
+     */
+    private void addSamples(Pattern pattern, int length, long used, int last) {
+        if (length == LENGTH) {
+            long all = 0L;
+            for (int y = 0; y < SIZE; y++)
+                for (int x = 0; x < SIZE; x++)
+                    all |= 1L << Pattern.Node.at(y, x).index();
+            patterns.add(pattern);
+            states.add(Grid.pack(all & ~used, last));
+            return;
+        }
+
+        for (int y = 0; y < SIZE; y++)
+            for (int x = 0; x < SIZE; x++) {
+                var node = Pattern.Node.at(y, x);
+                if ((used & 1L << node.index()) == 0L)
+                    addSamples(pattern.append(node), length + 1, used | 1L << node.index(), node.index());
+            }
+    }
+}
@@ -1,5 +1,7 @@
 package de.javaabc.lockpatterns._bruteforce;
 
+import de.javaabc.lockpatterns.util.Grid;
+
 /**
  * BRUTEFORCE
  *
@@ -7,20 +9,19 @@ package de.javaabc.lockpatterns._bruteforce;
  * - Not the fastest, but the simplest approach
  */
 public class LockPatterns {
+    // The geometry of the 3x3 grid, where node n has the index n - 1
+    private static final Grid GRID = Grid.of(3);
+
     /**
      * Checks whether a given node is an invalid successor of a given last node, given what nodes have already been visited.
      *
      * @param last    the node to connect from
      * @param node    the node to connect to
-     * @param visited the array that maps the node id to a boolean stating if this node has already been visited
+     * @param visited the mask of nodes that have already been visited, where node n is represented by bit n - 1
      * @return true iff the given next node is NOT a valid successor
      */
-    private static boolean illegalNextNode(int last, int node, boolean[] visited) {
-        return last % 3 == 1 && node == last + 2 && !visited[node - 1] // Rows left to right
-                || last % 3 == 0 && node == last - 2 && !visited[node + 1] // Rows right to left
-                || (last + 2) / 3 == 1 && node == last + 6 && !visited[node - 3] // Columns top to bottom
-                || (last + 2) / 3 == 3 && node == last - 6 && !visited[node + 3] // Columns bottom to top
-                || (!visited[5] && (last == 1 && node == 9 || last == 9 && node == 1 || last == 3 && node == 7 || last == 7 && node == 3)); // Diagonal
+    private static boolean illegalNextNode(int last, int node, long visited) {
+        return !GRID.validSuccessor(last - 1, node - 1, ~visited);
     }
 
     /**
@@ -30,27 +31,39 @@ public class LockPatterns {
      * @return true iff the given pattern is valid
      */
     private static boolean validPattern(int pattern) {
-        boolean[] visited = new boolean[10]; // Has a specific node already been visited?
+        long visited = 0L; // Which nodes have already been visited?
         for (int last = 0; pattern > 0; pattern /= 10) { // Iterate through digits from right to left
             int node = pattern % 10; // Last digit
             if (node == 0 // End of pattern reached
-                    || visited[node] // Node already visited
+                    || (visited & 1L << node - 1) != 0L // Node already visited
                     || last != 0 && illegalNextNode(last, node, visited)) // Illegal transition
                 return false;
 
-            visited[node] = true;
+            visited |= 1L << node - 1;
             last = node;
         }
         return true; // No illegal transition -> Pattern is valid
     }
 
-    public static void main(String[] args) {
-        long startTime = System.currentTimeMillis(); // Start timer
-
+    /**
+     * Counts all valid patterns by trying every number up to 987654321.
+     *
+     * @param minLength the minimal length for a valid pattern, between 1 and 9, e.g. 4
+     * @return the number of valid patterns
+     */
+    public static int countValidPatterns(int minLength) {
         int count = 0;
-        for (int pattern = 1234; pattern <= 987654321; pattern++) // Go through all possible patterns
+        int first = Integer.parseInt("123456789".substring(0, minLength)); // The smallest pattern with minLength nodes
+        for (int pattern = first; pattern <= 987654321; pattern++) // Go through all possible patterns
             if (validPattern(pattern)) // Count if valid
                 count++;
+        return count;
+    }
+
+    public static void main(String[] args) {
+        long startTime = System.currentTimeMillis(); // Start timer
+
+        int count = countValidPatterns(4);
 
         long stopTime = System.currentTimeMillis(); // Stop timer
 
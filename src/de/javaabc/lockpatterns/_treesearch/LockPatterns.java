@@ -1,8 +1,8 @@
 package de.javaabc.lockpatterns._treesearch;
 
-import java.util.Arrays;
+import de.javaabc.lockpatterns.util.Grid;
 
-import static de.javaabc.lockpatterns.util.MathUtil.arrayContains;
+import java.util.Arrays;
 
 /**
  * TREESEARCH
@@ -11,37 +11,57 @@ import static de.javaabc.lockpatterns.util.MathUtil.arrayContains;
  * - Faster than bruteforce
  */
 public class LockPatterns {
+    // The geometry of the 3x3 grid, where node n has the index n - 1
+    private static final Grid GRID = Grid.of(3);
+
     /**
-     * Checks whether a given node is an invalid successor of a given last node, given the path of already visited nodes.
+     * Counts the number of valid successor patterns, given the path of a start pattern.
      *
-     * @param path the array of visited nodes
-     * @param node the next node to connect to
-     * @return true iff the given next node is NOT a valid successor
+     * @param path      the current sequence of visited nodes
+     * @param minLength the minimal length for a valid pattern, e.g. 4
+     * @return the number of valid patterns starting with the sequence defined in <code>path</code>
      */
-    private static boolean illegalNextNode(int[] path, int node) {
-        int last = path[path.length - 1];
-        return last % 3 == 1 && node == last + 2 && !arrayContains(path, node - 1) // Rows left to right
-                || last % 3 == 0 && node == last - 2 && !arrayContains(path, node + 1) // Rows right to left
-                || (last + 2) / 3 == 1 && node == last + 6 && !arrayContains(path, node - 3) // Columns top to bottom<
-                || (last + 2) / 3 == 3 && node == last - 6 && !arrayContains(path, node + 3) // Columns bottom to top
-                || (!arrayContains(path, 5) && (last == 1 && node == 9 || last == 9 && node == 1 || last == 3 && node == 7 || last == 7 && node == 3)); // diagonal
+    public static long countValidSuccessors(int[] path, int minLength) {
+        return countValidSuccessors(path, minLength, 9);
     }
 
     /**
-     * Counts the number of valid successor patterns, given the path of a start pattern.
+     * Counts the number of valid successor patterns up to a maximal length, given the path of a start pattern.
+     * Paths are not extended beyond <code>maxLength</code> nodes.
+     *
+     * @param path      the current sequence of visited nodes
+     * @param minLength the minimal length for a valid pattern, e.g. 4
+     * @param maxLength the maximal length for a counted pattern, e.g. 6
+     * @return the number of valid patterns starting with the sequence defined in <code>path</code>
+     */
+    public static long countValidSuccessors(int[] path, int minLength, int maxLength) {
+        long visited = 0L;
+        for (int n : path)
+            visited |= 1L << n - 1;
+        return countValidSuccessors(path, visited, minLength, maxLength);
+    }
+
+    /**
+     * Counts the number of valid successor patterns up to a maximal length, given the path of a start pattern and the
+     * mask of its nodes, so that every successor is checked by a single lookup in the blocker table of {@link #GRID}.
      *
      * @param path      the current sequence of visited nodes
+     * @param visited   the mask of the nodes in <code>path</code>, where node n has the bit n - 1
      * @param minLength the minimal length for a valid pattern, e.g. 4
+     * @param maxLength the maximal length for a counted pattern, e.g. 6
      * @return the number of valid patterns starting with the sequence defined in <code>path</code>
      */
-    public static int countValidSuccessors(int[] path, int minLength) {
-        int count = path.length >= minLength ? 1 : 0;
+    private static long countValidSuccessors(int[] path, long visited, int minLength, int maxLength) {
+        long count = path.length >= minLength ? 1L : 0L;
+        if (path.length >= maxLength)
+            return count;
 
         for (int node = 1; node <= 9; node++)
-            if (!arrayContains(path, node) && (path.length == 0 || !illegalNextNode(path, node))) {
+            if ((visited & 1L << node - 1) == 0L
+                    && (path.length == 0 || GRID.validSuccessor(path[path.length - 1] - 1, node - 1, ~visited))) {
                 int[] copy = Arrays.copyOf(path, path.length + 1);
                 copy[path.length] = node;
-                count += countValidSuccessors(copy, minLength);
+                count = Math.addExact(count, countValidSuccessors(copy, visited | 1L << node - 1, minLength, maxLength));
             }
 
         return count;
@@ -50,7 +70,7 @@ public class LockPatterns {
     public static void main(String[] args) {
         long startTime = System.currentTimeMillis(); // Start timer
 
-        int res = countValidSuccessors(new int[]{}, 4);
+        long res = countValidSuccessors(new int[]{}, 4);
 
         long stopTime = System.currentTimeMillis(); // Stop timer
 
@@ -0,0 +1,131 @@
+package de.javaabc.lockpatterns.benchmark;
+
+import de.javaabc.lockpatterns.dp.Counter;
+import de.javaabc.lockpatterns.oop_advanced.PackedPattern;
+import de.javaabc.lockpatterns.util.Cache;
+import de.javaabc.lockpatterns.util.DenseMemo;
+import de.javaabc.lockpatterns.util.LongLongMap;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * ALLOCATION BUDGET OF THE COUNTING ENGINES
+ *
+ * - Counts the patterns of a grid with every engine and measures the heap bytes allocated per visited state
+ * - A visited state is a search tree node for engines without a memo, and a memo entry for the others
+ * - The primitive engines run with presized memos and must not allocate at all while counting
+ * - Exits with status 1 if any engine exceeds its budget, which fails <code>mvn verify</code>, since it runs the gate on 3x3
+ * - Options: <code>--size=3</code>, <code>--budget=ENGINE:BYTES</code> to override a budget (OOP is too slow beyond 3x3)
+ */
+public class AllocationGate {
+    // The minimal number of nodes in a valid pattern
+    private static final int MIN_LENGTH = 4;
+
+    // The number of runs that are measured per engine, of which the one with the least allocated bytes counts, since
+    // the JIT compiler occasionally allocates a few bytes in the counting thread while it deoptimizes a method
+    private static final int RUNS = 5;
+
+    // The JVM's thread bean, which can count the bytes allocated by a thread
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A prepared counting run. Everything that may be allocated up front, like memo tables, is allocated before the
+     * run is created, so only the counting itself is measured.
+     *
+     * @param count  counts the patterns and returns the result
+     * @param states returns the number of states visited by <code>count</code>, called after the measurement
+     */
+    private record Run(LongSupplier count, LongSupplier states) {
+    }
+
+    public static void main(String[] args) {
+        int size = 3;
+        Map<String, Double> budgets = new LinkedHashMap<>(); // The maximal number of bytes per visited state
+        budgets.put("OOP", 1024.0);
+        budgets.put("OOP_ADVANCED", 10240.0);
+        budgets.put("PACKED", 0.0);
+        budgets.put("DP", 0.0);
+        for (String arg : args) {
+            if (arg.startsWith("--size=")) {
+                size = Integer.parseInt(arg.substring("--size=".length()));
+            } else if (arg.startsWith("--budget=")) {
+                String[] budget = arg.substring("--budget=".length()).split(":");
+                budgets.put(budget[0], Double.parseDouble(budget[1]));
+            }
+        }
+
+        int n = size;
+        Map<String, Supplier<Run>> engines = new LinkedHashMap<>();
+        engines.put("OOP", () -> {
+            var pattern = new de.javaabc.lockpatterns.oop.Pattern(n);
+            long states = pattern.countValidSuccessors(0); // Every pattern, including the empty one, is one node
+            return new Run(() -> pattern.countValidSuccessors(MIN_LENGTH), () -> states);
+        });
+        engines.put("OOP_ADVANCED", () -> {
+            de.javaabc.lockpatterns.oop_advanced.Pattern.clearCache();
+            var pattern = new de.javaabc.lockpatterns.oop_advanced.Pattern(n);
+            return new Run(() -> pattern.countValidPatterns(MIN_LENGTH), de.javaabc.lockpatterns.oop_advanced.Pattern::cacheSize);
+        });
+        engines.put("PACKED", () -> {
+            var pattern = new PackedPattern(n);
+            var probe = new LongLongMap();
+            pattern.countValidPatterns(MIN_LENGTH, probe);
+            var memo = new LongLongMap(probe.size()); // Large enough to never grow while counting
+            return new Run(() -> pattern.countValidPatterns(MIN_LENGTH, memo), memo::size);
+        });
+        engines.put("DP", () -> {
+            var memo = new DenseMemo(n * n);
+            var counter = new Counter(n, MIN_LENGTH, memo);
+            return new Run(counter::count, () -> {
+                long[] states = new long[1];
+                memo.forEach((key, value) -> states[0]++);
+                return states[0];
+            });
+        });
+
+        Cache.printProgress(false);
+        System.out.printf("%-16s %12s %14s %14s %12s%n", "Engine", "States", "Bytes", "Bytes/state", "Budget");
+
+        boolean passed = true;
+        for (var engine : engines.entrySet()) {
+            if (!budgets.containsKey(engine.getKey()))
+                continue;
+
+            measure(engine.getValue().get()); // Warm up, so that class loading and initialization are not measured
+            long bytes = Long.MAX_VALUE;
+            long states = 0L;
+            for (int i = 0; i < RUNS; i++) {
+                var run = engine.getValue().get();
+                bytes = Math.min(bytes, measure(run));
+                states = run.states().getAsLong();
+            }
+            double perState = (double) bytes / Math.max(states, 1L);
+            double budget = budgets.get(engine.getKey());
+
+            boolean ok = budget == 0.0 ? bytes == 0L : perState <= budget;
+            passed &= ok;
+            System.out.printf("%-16s %12d %14d %14.2f %12.2f %s%n", engine.getKey(), states, bytes, perState, budget, ok ? "OK" : "FAILED");
+        }
+
+        if (!passed) {
+            System.out.println("Allocation budget exceeded");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Counts the patterns of a prepared run.
+     *
+     * @param run the run to execute
+     * @return the number of bytes that the current thread has allocated while counting
+     */
+    private static long measure(Run run) {
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        run.count().getAsLong();
+        return THREADS.getCurrentThreadAllocatedBytes() - before;
+    }
+}
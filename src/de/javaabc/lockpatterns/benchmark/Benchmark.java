@@ -0,0 +1,129 @@
+package de.javaabc.lockpatterns.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * A small benchmark harness in the spirit of JMH.
+ * <p>
+ * A workload is executed a number of times to warm up the JIT compiler, then it is measured a number of times, and
+ * the distribution of the measured times is summarized. The results of all executions are consumed, so the JIT
+ * compiler cannot remove the workload.
+ * <p>
+ * Like the <code>-prof gc</code> profiler of JMH, the harness also reports the number of bytes that the workload
+ * allocates on the heap, measured by the allocation counter of the current thread.
+ */
+public final class Benchmark {
+    // Consumes the results of the workloads
+    private static volatile long sink;
+
+    // The JVM's thread bean, which can count the bytes allocated by a thread
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Benchmark() {
+    }
+
+    /**
+     * Runs a workload with warmup and measurement iterations.
+     *
+     * @param name       the name of the benchmark
+     * @param workload   the workload, returning any result
+     * @param warmups    the number of iterations that are not measured
+     * @param iterations the number of measured iterations
+     * @return the summary of the measured iterations
+     */
+    public static Result run(String name, LongSupplier workload, int warmups, int iterations) {
+        return run(name, workload, 1, warmups, iterations);
+    }
+
+    /**
+     * Runs a workload that performs a batch of operations per iteration, e.g. a loop over many lookups.
+     *
+     * @param name       the name of the benchmark
+     * @param workload   the workload, returning any result
+     * @param operations the number of operations that the workload performs per iteration
+     * @param warmups    the number of iterations that are not measured
+     * @param iterations the number of measured iterations
+     * @return the summary of the measured iterations
+     */
+    public static Result run(String name, LongSupplier workload, long operations, int warmups, int iterations) {
+        for (int i = 0; i < warmups; i++)
+            sink += workload.getAsLong();
+
+        long[] nanos = new long[iterations];
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            sink += workload.getAsLong();
+            nanos[i] = System.nanoTime() - start;
+        }
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result(name, nanos, operations, (double) allocated / iterations / operations);
+    }
+
+    /**
+     * The summary of a benchmark.
+     *
+     * @param name       the name of the benchmark
+     * @param nanos      the measured time of every iteration in nanoseconds
+     * @param operations the number of operations per iteration
+     * @param bytesPerOp the average number of bytes allocated per operation
+     */
+    public record Result(String name, long[] nanos, long operations, double bytesPerOp) {
+        /**
+         * @return the average time per iteration in milliseconds
+         */
+        public double mean() {
+            return Arrays.stream(nanos).average().orElse(Double.NaN) / 1e6;
+        }
+
+        /**
+         * @return the sample standard deviation of the time per iteration in milliseconds
+         */
+        public double stddev() {
+            double mean = mean();
+            double squares = Arrays.stream(nanos).mapToDouble(n -> (n / 1e6 - mean) * (n / 1e6 - mean)).sum();
+            return nanos.length > 1 ? Math.sqrt(squares / (nanos.length - 1)) : 0.0;
+        }
+
+        /**
+         * @param p the percentile between 0 and 100
+         * @return the time per iteration at the given percentile in milliseconds
+         */
+        public double percentile(double p) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(p / 100 * sorted.length); // Nearest-rank method
+            return sorted[Math.max(rank - 1, 0)] / 1e6;
+        }
+
+        /**
+         * @return the number of operations per second
+         */
+        public double throughput() {
+            return operations * 1e3 / mean();
+        }
+
+        /**
+         * @return the average time per operation in nanoseconds
+         */
+        public double nanosPerOp() {
+            return mean() * 1e6 / operations;
+        }
+
+        /**
+         * @return a header line that matches the format of {@link #toString()}
+         */
+        public static String header() {
+            return String.format("%-32s %12s %12s %12s %12s %12s %14s %12s %12s", "Benchmark", "mean [ms]", "stddev [ms]",
+                    "min [ms]", "p50 [ms]", "max [ms]", "ops/s", "ns/op", "B/op");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-32s %12.3f %12.3f %12.3f %12.3f %12.3f %14.1f %12.2f %12.2f", name, mean(), stddev(),
+                    percentile(0), percentile(50), percentile(100), throughput(), nanosPerOp(), bytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package de.javaabc.lockpatterns.benchmark;
+
+import de.javaabc.lockpatterns.dp.Counter;
+import de.javaabc.lockpatterns.dp.LayeredCounter;
+import de.javaabc.lockpatterns.oop_advanced.PackedPattern;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * All counting engines of this project with a common interface, so that they can be benchmarked side by side.
+ */
+public enum Engine {
+    BRUTEFORCE(3, 3) {
+        @Override
+        public long count(int size, int minLength) {
+            return de.javaabc.lockpatterns._bruteforce.LockPatterns.countValidPatterns(minLength);
+        }
+    },
+
+    TREESEARCH(3, 3) {
+        @Override
+        public long count(int size, int minLength) {
+            return de.javaabc.lockpatterns._treesearch.LockPatterns.countValidSuccessors(new int[]{}, minLength);
+        }
+    },
+
+    OOP(1, 3) {
+        @Override
+        public long count(int size, int minLength) {
+            return new de.javaabc.lockpatterns.oop.Pattern(size).countValidSuccessors(minLength);
+        }
+    },
+
+    OOP_ADVANCED(1, 4) {
+        @Override
+        public long count(int size, int minLength) {
+            de.javaabc.lockpatterns.oop_advanced.Pattern.clearCache(); // Measure from scratch
+            return new de.javaabc.lockpatterns.oop_advanced.Pattern(size).countValidPatterns(minLength);
+        }
+    },
+
+    PACKED(1, 4) {
+        @Override
+        public long count(int size, int minLength) {
+            return new PackedPattern(size).countValidPatterns(minLength);
+        }
+    },
+
+    DP(1, 4) {
+        @Override
+        public long count(int size, int minLength) {
+            return new Counter(size, minLength).count();
+        }
+    },
+
+    LAYERED(1, 4) {
+        @Override
+        public long count(int size, int minLength) {
+            return new LayeredCounter(size, minLength, ForkJoinPool.commonPool()).count().longValueExact();
+        }
+    };
+
+    // The smallest grid size the engine can count
+    private final int minSize;
+
+    // The largest grid size the engine can count in reasonable time and memory
+    private final int maxSize;
+
+    Engine(int minSize, int maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param size the width and height of the pattern grid
+     * @return true iff this engine can count patterns in a (size x size) grid
+     */
+    public boolean supports(int size) {
+        return size >= minSize && size <= maxSize;
+    }
+
+    /**
+     * Counts all valid patterns from scratch.
+     *
+     * @param size      the width and height of the pattern grid
+     * @param minLength the minimal number of nodes in a valid pattern, e.g. 4
+     * @return the total number of valid patterns
+     */
+    public abstract long count(int size, int minLength);
+}
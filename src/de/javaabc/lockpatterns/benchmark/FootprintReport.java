@@ -0,0 +1,141 @@
+package de.javaabc.lockpatterns.benchmark;
+
+import de.javaabc.lockpatterns.dp.Counter;
+import de.javaabc.lockpatterns.oop_advanced.Pattern;
+import de.javaabc.lockpatterns.util.Cache;
+import de.javaabc.lockpatterns.util.ConcurrentLayeredMemo;
+import de.javaabc.lockpatterns.util.DenseMemo;
+import de.javaabc.lockpatterns.util.Grid;
+import de.javaabc.lockpatterns.util.LayeredMemo;
+import de.javaabc.lockpatterns.util.LongLongMap;
+import de.javaabc.lockpatterns.util.LongMemo;
+import de.javaabc.lockpatterns.util.OffHeapMemo;
+import de.javaabc.lockpatterns.util.StateIndexer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * MEMORY FOOTPRINT OF THE MEMO BACKENDS
+ *
+ * - Fills every memo backend with the real states of a count on a (size x size) grid
+ * - Measures the retained heap bytes of the {@link Cache}, and the table bytes (on heap or native) of the primitive memos
+ * - Projects the total memory for a larger grid, assuming the same share of reachable states per possible state
+ * - Options: <code>--size=4</code>, <code>--entries=N</code> to store only N states, <code>--project=5</code>
+ * - The {@link Cache} with {@link Pattern} keys takes ~30 s on 4x4, since the whole count has to run
+ * - Run with <code>--add-modules jdk.incubator.foreign</code> for the native {@link OffHeapMemo}
+ */
+public class FootprintReport {
+    // The minimal number of nodes in a valid pattern
+    private static final int MIN_LENGTH = 4;
+
+    public static void main(String[] args) {
+        int size = 4;
+        int entries = Integer.MAX_VALUE;
+        int projectedSize = 5;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--size="))
+                size = Integer.parseInt(value);
+            else if (arg.startsWith("--entries="))
+                entries = Integer.parseInt(value);
+            else if (arg.startsWith("--project="))
+                projectedSize = Integer.parseInt(value);
+        }
+
+        // Collect real (state, count) pairs from the dynamic programming search, whose keys also fit the dense tables
+        var probe = new LongLongMap();
+        new Counter(size, MIN_LENGTH, probe).count();
+        int n = Math.min(entries, probe.size());
+        long[] keys = new long[n];
+        long[] values = new long[n];
+        int[] i = {0};
+        probe.forEach((key, value) -> {
+            if (i[0] < n) {
+                keys[i[0]] = key;
+                values[i[0]++] = value;
+            }
+        });
+        probe = null;
+
+        int nodeCount = size * size;
+        double scale = states(projectedSize * projectedSize) / states(nodeCount);
+        System.out.printf("Measured on %dx%d, projected to %dx%d (%.0fx as many possible states)%n%n",
+                size, size, projectedSize, projectedSize, scale);
+        System.out.printf("%-22s %12s %14s %12s %16s%n", "Backend", "Entries", "Bytes", "Bytes/entry", projectedSize + "x" + projectedSize + " total");
+
+        Cache.printProgress(false);
+        Pattern.clearCache();
+        long before = usedHeap();
+        new Pattern(size).countValidPatterns(MIN_LENGTH);
+        long cacheEntries = Pattern.cacheSize();
+        long cacheBytes = usedHeap() - before;
+        Pattern.clearCache();
+        print("Cache<Pattern>", cacheEntries, cacheBytes, (long) (cacheBytes * scale));
+
+        Map<String, Supplier<LongMemo>> backends = new LinkedHashMap<>();
+        backends.put("LongLongMap", LongLongMap::new);
+        backends.put("LongLongMap (presized)", () -> new LongLongMap(n));
+        backends.put("DenseMemo", () -> new DenseMemo(nodeCount));
+        backends.put("OffHeapMemo (native)", () -> new OffHeapMemo(nodeCount));
+        int probeSize = size;
+        backends.put("LayeredMemo", () -> new LayeredMemo(new StateIndexer(Grid.of(probeSize).allNodes(), true)));
+        backends.put("ConcurrentLayeredMemo", () -> new ConcurrentLayeredMemo(new StateIndexer(Grid.of(probeSize).allNodes(), true)));
+        for (var backend : backends.entrySet()) {
+            try (LongMemo memo = fill(backend.getValue().get(), keys, values)) {
+                long bytes = memo.footprint(); // The exact size of the tables, which are the only large objects
+                long projected = memo instanceof DenseMemo || memo instanceof OffHeapMemo
+                        ? DenseMemo.bytesFor(projectedSize * projectedSize) // A slot for every possible state
+                        : memo instanceof LayeredMemo || memo instanceof ConcurrentLayeredMemo
+                        ? (long) states(projectedSize * projectedSize) * Long.BYTES // A slot for every state with the last node in the mask
+                        : (long) (bytes * scale);
+                print(backend.getKey(), n, bytes, projected);
+            }
+        }
+    }
+
+    /**
+     * @param nodeCount the number of nodes in a grid
+     * @return the number of possible (mask, last node) states, where the last node is part of the mask
+     */
+    private static double states(int nodeCount) {
+        return nodeCount * Math.pow(2, nodeCount - 1);
+    }
+
+    /**
+     * Stores states in a memo.
+     *
+     * @param memo   the memo to fill
+     * @param keys   the packed states
+     * @param values the counts of the states
+     * @return the filled memo
+     */
+    private static LongMemo fill(LongMemo memo, long[] keys, long[] values) {
+        for (int i = 0; i < keys.length; i++)
+            memo.put(keys[i], values[i]);
+        return memo;
+    }
+
+    /**
+     * Prints a line of the report.
+     *
+     * @param backend   the name of the memo backend
+     * @param entries   the number of stored states
+     * @param bytes     the measured number of bytes
+     * @param projected the projected number of bytes for the larger grid
+     */
+    private static void print(String backend, long entries, long bytes, long projected) {
+        System.out.printf("%-22s %12d %14d %12.1f %12.1f GiB%n", backend, entries, bytes, (double) bytes / entries, projected / (double) (1L << 30));
+    }
+
+    /**
+     * @return the number of bytes occupied by reachable objects on the heap
+     */
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) // A single request may not collect everything
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
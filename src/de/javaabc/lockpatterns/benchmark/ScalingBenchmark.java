@@ -0,0 +1,103 @@
+package de.javaabc.lockpatterns.benchmark;
+
+import de.javaabc.lockpatterns.dp.Counter;
+import de.javaabc.lockpatterns.util.ConcurrentDenseMemo;
+import de.javaabc.lockpatterns.util.ConcurrentLayeredMemo;
+import de.javaabc.lockpatterns.util.DenseMemo;
+import de.javaabc.lockpatterns.util.Grid;
+import de.javaabc.lockpatterns.util.LayeredMemo;
+import de.javaabc.lockpatterns.util.LongMemo;
+import de.javaabc.lockpatterns.util.StateIndexer;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * MULTI-CORE SCALING OF THE PARALLEL DYNAMIC PROGRAMMING COUNTER
+ *
+ * - Counts 3x3, 4x4 and partial 5x5 patterns with 1 to all available threads, using a lock-free memo
+ * - Partial 5x5 means all patterns of at most <code>--partial-length=6</code> nodes
+ * - The memos are dense tables ({@link DenseMemo} and {@link ConcurrentDenseMemo}), or layered tables
+ *   ({@link LayeredMemo} and {@link ConcurrentLayeredMemo}) if a dense table does not fit, e.g. 6.25 GiB for 5x5
+ * - The speedup is relative to the sequential engine with the same kind of memo, and the self speedup is relative to
+ *   the parallel run with one thread
+ * - Writes speedup, efficiency and memoized states per run to <code>--out=scaling.csv</code>
+ * - Measures memo contention as duplicates, the states that racing threads have computed more than once, and their
+ *   share of all memoized states
+ * - Options: <code>--max-threads=N</code>, <code>--warmups=2</code>, <code>--iterations=5</code>
+ */
+public class ScalingBenchmark {
+    // The minimal number of nodes in a valid pattern
+    private static final int MIN_LENGTH = 4;
+
+    public static void main(String[] args) throws IOException {
+        int partialLength = 6;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        int warmups = 2;
+        int iterations = 5;
+        Path out = Path.of("scaling.csv");
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--partial-length="))
+                partialLength = Integer.parseInt(value);
+            else if (arg.startsWith("--max-threads="))
+                maxThreads = Integer.parseInt(value);
+            else if (arg.startsWith("--warmups="))
+                warmups = Integer.parseInt(value);
+            else if (arg.startsWith("--iterations="))
+                iterations = Integer.parseInt(value);
+            else if (arg.startsWith("--out="))
+                out = Path.of(value);
+        }
+
+        int[][] grids = {{3, 9}, {4, 16}, {5, partialLength}}; // Size and maximal pattern length
+        try (var csv = new PrintWriter(Files.newBufferedWriter(out))) {
+            csv.println("grid,max_length,threads,mean_ms,stddev_ms,sequential_ms,speedup,efficiency,self_speedup,states,patterns,duplicates,duplicate_ratio");
+            System.out.println(Benchmark.Result.header());
+
+            for (int[] grid : grids) {
+                int size = grid[0], maxLength = grid[1];
+                long nodes = Grid.of(size).allNodes();
+
+                // Dense tables like the dp main where they fit into the heap
+                boolean dense = DenseMemo.bytesFor(size * size) <= Runtime.getRuntime().maxMemory() / 2;
+                Supplier<LongMemo> sequentialMemo = dense ? () -> new DenseMemo(size * size) : () -> new LayeredMemo(new StateIndexer(nodes, true));
+                Supplier<LongMemo> parallelMemo = dense ? () -> new ConcurrentDenseMemo(size * size) : () -> new ConcurrentLayeredMemo(new StateIndexer(nodes, true));
+                var sequential = Benchmark.run(size + "x" + size + " max=" + maxLength + " sequential",
+                        () -> new Counter(size, MIN_LENGTH, maxLength, sequentialMemo.get()).count(), warmups, iterations);
+                System.out.println(sequential);
+
+                double oneThread = Double.NaN;
+                for (int threads = 1; threads <= maxThreads; threads++) {
+                    var pool = new ForkJoinPool(threads);
+                    var memo = new LongMemo[1]; // The memo of the last iteration, to report its statistics
+                    var result = Benchmark.run(size + "x" + size + " max=" + maxLength + " threads=" + threads, () -> {
+                        memo[0] = parallelMemo.get();
+                        return new Counter(size, MIN_LENGTH, maxLength, memo[0]).countParallel(pool);
+                    }, warmups, iterations);
+                    pool.shutdown();
+
+                    if (threads == 1)
+                        oneThread = result.mean();
+                    double speedup = sequential.mean() / result.mean();
+                    long duplicates = memo[0] instanceof ConcurrentDenseMemo denseMemo ? denseMemo.duplicates()
+                            : ((ConcurrentLayeredMemo) memo[0]).duplicates(); // Before the sequential count below
+                    long patterns = new Counter(size, MIN_LENGTH, maxLength, memo[0]).count(); // All states are memoized
+                    long[] states = {0L};
+                    memo[0].forEach((key, value) -> states[0]++);
+                    System.out.println(result);
+                    csv.println(String.format(Locale.ROOT, "%dx%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d,%.6f",
+                            size, size, maxLength, threads, result.mean(), result.stddev(), sequential.mean(), speedup,
+                            speedup / threads, oneThread / result.mean(), states[0], patterns, duplicates,
+                            (double) duplicates / states[0]));
+                }
+            }
+        }
+        System.out.println("Report written to " + out);
+    }
+}
@@ -0,0 +1,187 @@
+package de.javaabc.lockpatterns.dp;
+
+import de.javaabc.lockpatterns.util.Checkpoint;
+import de.javaabc.lockpatterns.util.DenseMemo;
+import de.javaabc.lockpatterns.util.Grid;
+import de.javaabc.lockpatterns.util.LongMemo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Counts patterns by dynamic programming over (visited mask, last node) states.
+ * <p>
+ * The number of valid patterns that continue a given state only depends on the set of visited nodes and the last node,
+ * so every state is computed once and stored in a {@link LongMemo}, by default a {@link DenseMemo}.
+ * <p>
+ * With a thread-safe memo like {@link de.javaabc.lockpatterns.util.ConcurrentLayeredMemo}, the subtrees below the root can be
+ * counted in parallel, see {@link #countParallel(ForkJoinPool)}.
+ */
+public class Counter {
+    // The geometry of the pattern grid
+    private final Grid grid;
+
+    // The minmal number of nodes in a valid pattern, e.g. 4
+    private final int minLength;
+
+    // The maximal number of nodes in a counted pattern, smaller than the number of nodes to count only a part of a grid
+    private final int maxLength;
+
+    // The table of already computed states
+    private final LongMemo memo;
+
+    /**
+     * Creates a new counter that only counts patterns up to a given length.
+     *
+     * @param size      the width and height of the pattern grid
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @param memo      the table to store computed states in, which must be used for a single maximal length only
+     */
+    public Counter(int size, int minLength, int maxLength, LongMemo memo) {
+        this.grid = Grid.of(size);
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.memo = memo;
+    }
+
+    /**
+     * Creates a new counter.
+     *
+     * @param size      the width and height of the pattern grid
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param memo      the table to store computed states in
+     */
+    public Counter(int size, int minLength, LongMemo memo) {
+        this(size, minLength, size * size, memo);
+    }
+
+    /**
+     * Creates a new counter that stores its states in a {@link DenseMemo}.
+     *
+     * @param size      the width and height of the pattern grid, at most 5
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     */
+    public Counter(int size, int minLength) {
+        this(size, minLength, new DenseMemo(size * size));
+    }
+
+    /**
+     * Computes the number of valid patterns that continue a given state.
+     *
+     * @param visited the mask of the nodes that have already been visited, including <code>last</code>
+     * @param last    the index of the last node
+     * @return the number of valid patterns that start with the given state
+     */
+    private long count(long visited, int last) {
+        long key = Grid.pack(visited, last);
+        long res = memo.get(key);
+        if (res != LongMemo.MISSING)
+            return res;
+
+        long unused = Long.bitCount(visited) < maxLength ? grid.allNodes() & ~visited : 0L;
+        res = Long.bitCount(visited) >= minLength ? 1L : 0L;
+        for (long rest = unused; rest != 0L; rest &= rest - 1) { // Iterate through all unused nodes
+            int next = Long.numberOfTrailingZeros(rest);
+            if (grid.validSuccessor(last, next, unused))
+                res = Math.addExact(res, count(visited | 1L << next, next));
+        }
+
+        memo.put(key, res);
+        return res;
+    }
+
+    /**
+     * Computes the number of valid patterns that continue a given state, where every subtree at depth
+     * <code>depth</code> is only computed if the {@link Checkpoint} does not contain it yet.
+     *
+     * @param visited    the mask of the nodes that have already been visited, including <code>last</code>
+     * @param last       the index of the last node
+     * @param depth      the length of the patterns whose subtrees are recorded
+     * @param checkpoint the log of finished subtrees
+     * @return the number of valid patterns that start with the given state
+     */
+    private long count(long visited, int last, int depth, Checkpoint checkpoint) {
+        if (Long.bitCount(visited) >= Math.min(depth, maxLength)) {
+            String key = "dp/" + grid.size() + "/" + minLength + (maxLength < grid.nodeCount() ? "-" + maxLength : "")
+                    + "/" + Long.toHexString(Grid.pack(visited, last));
+            Long finished = checkpoint.get(key);
+            if (finished != null)
+                return finished;
+
+            long res = count(visited, last);
+            checkpoint.record(key, res);
+            return res;
+        }
+
+        long unused = grid.allNodes() & ~visited;
+        long res = Long.bitCount(visited) >= minLength ? 1L : 0L;
+        for (long rest = unused; rest != 0L; rest &= rest - 1) {
+            int next = Long.numberOfTrailingZeros(rest);
+            if (grid.validSuccessor(last, next, unused))
+                res = Math.addExact(res, count(visited | 1L << next, next, depth, checkpoint));
+        }
+        return res;
+    }
+
+    /**
+     * Computes the number of valid patterns in the (size x size) grid and skips all subtrees that a previous run has
+     * already recorded.
+     *
+     * @param depth      the length of the patterns whose subtrees are recorded, e.g. 2
+     * @param checkpoint the log of finished subtrees
+     * @return the total number of valid patterns
+     */
+    public long count(int depth, Checkpoint checkpoint) {
+        long res = minLength <= 0 ? 1L : 0L; // The empty pattern
+        if (maxLength >= 1) // A maximal length of 0 only admits the empty pattern
+            for (int first = 0; first < grid.nodeCount(); first++)
+                res = Math.addExact(res, count(1L << first, first, Math.max(depth, 1), checkpoint));
+        return res;
+    }
+
+    /**
+     * Computes the number of valid patterns in the (size x size) grid.
+     *
+     * @return the total number of valid patterns
+     */
+    public long count() {
+        long res = minLength <= 0 ? 1L : 0L; // The empty pattern
+        if (maxLength >= 1) // A maximal length of 0 only admits the empty pattern
+            for (int first = 0; first < grid.nodeCount(); first++)
+                res = Math.addExact(res, count(1L << first, first));
+        return res;
+    }
+
+    /**
+     * Computes the number of valid patterns in the (size x size) grid in parallel. The tree is split at the root into
+     * one task per pattern of length 2, and all tasks share the memo, which must therefore be thread-safe.
+     *
+     * @param pool the {@link ForkJoinPool} to run the tasks in
+     * @return the total number of valid patterns
+     */
+    public long countParallel(ForkJoinPool pool) {
+        long res = minLength <= 0 ? 1L : 0L; // The empty pattern
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+        for (int first = 0; first < grid.nodeCount(); first++) {
+            if (minLength <= 1 && maxLength >= 1)
+                res++; // The pattern that only consists of the first node
+            if (maxLength < 2)
+                continue;
+
+            long unused = grid.allNodes() & ~(1L << first);
+            for (long rest = unused; rest != 0L; rest &= rest - 1) {
+                int second = Long.numberOfTrailingZeros(rest);
+                long visited = 1L << first | 1L << second;
+                if (grid.validSuccessor(first, second, unused))
+                    tasks.add(pool.submit(() -> count(visited, second)));
+            }
+        }
+
+        for (var task : tasks)
+            res = Math.addExact(res, task.join());
+        return res;
+    }
+}
@@ -0,0 +1,153 @@
+package de.javaabc.lockpatterns.dp;
+
+import de.javaabc.lockpatterns.util.Grid;
+import de.javaabc.lockpatterns.util.StateIndexer;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Counts patterns by a bottom-up sweep over the layers of (visited mask, last node) states.
+ * <p>
+ * The count of a state with k visited nodes only depends on the counts of its successors with k + 1 visited nodes, so
+ * the layers are computed from the longest patterns down to the patterns of a single node. Every layer is a plain
+ * <code>long[]</code> indexed by a {@link StateIndexer}, and only the layer that is being computed and the layer below
+ * it in the sweep are kept, so the peak memory is bounded by the two largest adjacent layers instead of all states.
+ * The states of a layer are independent of each other and are computed in chunks on a {@link ForkJoinPool}.
+ * <p>
+ * The counts of 5x5 exceed 64 bits, so every count is stored as two longs, the low and the high half of an unsigned
+ * 128-bit number. This needs about 2 GiB for the two largest layers of 5x5.
+ */
+public class LayeredCounter {
+    // The number of states per task
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    // The geometry of the pattern grid
+    private final Grid grid;
+
+    // The minmal number of nodes in a valid pattern, e.g. 4
+    private final int minLength;
+
+    // The maximal number of nodes in a counted pattern
+    private final int maxLength;
+
+    // The mapping from states to positions within their layer
+    private final StateIndexer indexer;
+
+    // The pool that computes the chunks of a layer
+    private final ForkJoinPool pool;
+
+    // The largest number of bytes of the layers that have been resident at the same time
+    private long peakFootprint;
+
+    /**
+     * Creates a new counter that only counts patterns up to a given length.
+     *
+     * @param size      the width and height of the pattern grid
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @param pool      the {@link ForkJoinPool} to compute the layers in
+     */
+    public LayeredCounter(int size, int minLength, int maxLength, ForkJoinPool pool) {
+        this.grid = Grid.of(size);
+        this.minLength = minLength;
+        this.maxLength = Math.min(maxLength, grid.nodeCount());
+        this.indexer = new StateIndexer(grid.allNodes(), true);
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a new counter.
+     *
+     * @param size      the width and height of the pattern grid
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param pool      the {@link ForkJoinPool} to compute the layers in
+     */
+    public LayeredCounter(int size, int minLength, ForkJoinPool pool) {
+        this(size, minLength, size * size, pool);
+    }
+
+    /**
+     * Computes the exact number of valid patterns in the (size x size) grid.
+     *
+     * @return the total number of valid patterns
+     */
+    public BigInteger count() {
+        long[] successors = new long[0];
+        for (int layer = maxLength; layer >= 1; layer--) {
+            long size = indexer.layerSize(layer);
+            if (2 * size > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Too many states in layer " + layer + ": " + size);
+
+            long[] counts = new long[2 * (int) size]; // The low and the high half of every count
+            peakFootprint = Math.max(peakFootprint, (long) (counts.length + successors.length) * Long.BYTES);
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int from = 0; from < size; from += CHUNK_SIZE) {
+                int start = from, end = (int) Math.min(from + CHUNK_SIZE, size), k = layer;
+                long[] next = successors;
+                tasks.add(pool.submit(() -> countChunk(k, start, end, counts, next)));
+            }
+            for (var task : tasks)
+                task.join();
+
+            successors = counts; // The previous layer is not referenced anymore and can be collected
+        }
+
+        BigInteger res = minLength <= 0 ? BigInteger.ONE : BigInteger.ZERO; // The empty pattern
+        for (int i = 0; i < successors.length; i += 2) // Every state of the first layer is the pattern of its first node
+            res = res.add(BigInteger.valueOf(successors[i + 1]).shiftLeft(Long.SIZE).add(new BigInteger(Long.toUnsignedString(successors[i]))));
+        return res;
+    }
+
+    /**
+     * Computes the counts of consecutive states of a layer. The masks of a layer are ordered like numbers, so the states
+     * of a chunk are enumerated by Gosper's hack instead of computing every state from its index.
+     *
+     * @param layer      the number of visited nodes of the states
+     * @param from       the index of the first state, inclusive
+     * @param to         the index of the last state, exclusive
+     * @param counts     the counts of the layer as (low, high) pairs, to be filled
+     * @param successors the counts of the layer with one more visited node as (low, high) pairs
+     */
+    private void countChunk(int layer, int from, int to, long[] counts, long[] successors) {
+        long state = indexer.state(layer, from);
+        long visited = Grid.mask(state);
+        int last = Grid.last(state);
+        for (int index = from; index < to; index++) {
+            long unused = layer < maxLength ? grid.allNodes() & ~visited : 0L;
+            long low = layer >= minLength ? 1L : 0L, high = 0L;
+            for (long rest = unused; rest != 0L; rest &= rest - 1) { // Iterate through all unused nodes
+                int next = Long.numberOfTrailingZeros(rest);
+                if (grid.validSuccessor(last, next, unused)) {
+                    int i = 2 * (int) indexer.index(visited | 1L << next, next);
+                    long sum = low + successors[i];
+                    high += successors[i + 1] + (Long.compareUnsigned(sum, low) < 0 ? 1L : 0L); // Carry
+                    low = sum;
+                }
+            }
+            counts[2 * index] = low;
+            counts[2 * index + 1] = high;
+
+            long higher = visited & -(2L << last); // The next last node of the same mask, or the next mask
+            if (higher != 0L) {
+                last = Long.numberOfTrailingZeros(higher);
+            } else if (index + 1 < to) {
+                long lowest = visited & -visited;
+                long ripple = visited + lowest;
+                visited = ((ripple ^ visited) >>> 2) / lowest | ripple;
+                last = Long.numberOfTrailingZeros(visited);
+            }
+        }
+    }
+
+    /**
+     * @return the largest number of bytes of the layers that have been resident at the same time during {@link #count()}
+     */
+    public long peakFootprint() {
+        return peakFootprint;
+    }
+}
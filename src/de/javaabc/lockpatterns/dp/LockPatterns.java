@@ -0,0 +1,121 @@
+package de.javaabc.lockpatterns.dp;
+
+import de.javaabc.lockpatterns.util.Checkpoint;
+import de.javaabc.lockpatterns.util.ConcurrentDenseMemo;
+import de.javaabc.lockpatterns.util.ConcurrentLayeredMemo;
+import de.javaabc.lockpatterns.util.DenseMemo;
+import de.javaabc.lockpatterns.util.Grid;
+import de.javaabc.lockpatterns.util.LayeredMemo;
+import de.javaabc.lockpatterns.util.LongMemo;
+import de.javaabc.lockpatterns.util.MappedMemo;
+import de.javaabc.lockpatterns.util.OffHeapMemo;
+import de.javaabc.lockpatterns.util.StateIndexer;
+import de.javaabc.lockpatterns.util.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * DYNAMIC PROGRAMMING
+ *
+ * - Counts (visited mask, last node) states in a dense primitive table
+ * - Handles 4x4 patterns in well under a second (8 MiB table)
+ * - 5x5 needs a 6.25 GiB table, run with <code>--size=5 --offheap</code>, <code>-XX:MaxDirectMemorySize=6400m</code> and
+ *   <code>--add-modules jdk.incubator.foreign</code>
+ * - Or run with <code>--mapped=FILE</code> to keep the table in a file that a restarted run can continue from
+ * - Or run with <code>--tt=MIB</code> to use a fixed-size transposition table of MIB mebibytes
+ * - Or run with <code>--layered</code> to index states by the combinatorial number system, half the dense table and
+ *   only the layers up to <code>--max-length</code>
+ * - Run with <code>--checkpoint=FILE</code> to record finished subtrees of length 2, so a restarted run skips them
+ * - Run with <code>--threads=N</code> to count the subtrees below the root in parallel, using a lock-free dense memo
+ *   (or a lock-free layered memo if the dense table does not fit into half of the heap), which rules out the other
+ *   memos and <code>--checkpoint</code>
+ * - Run with <code>--max-length=L</code> to only count patterns of up to L nodes
+ * - Run with <code>--bottom-up</code> (and optionally <code>--threads=N</code>) to sweep the layers with a
+ *   {@link LayeredCounter}, which keeps only two layers and counts 5x5 exactly beyond 64 bits in about 2 GiB
+ */
+public class LockPatterns {
+    public static void main(String[] args) throws IOException {
+        int size = 4;
+        int minLength = 4;
+        boolean offHeap = false;
+        boolean layered = false;
+        boolean bottomUp = false;
+        Path mappedFile = null;
+        long ttBytes = 0L;
+        Path checkpointFile = null;
+        int threads = 0;
+        int maxLength = Integer.MAX_VALUE;
+        for (String arg : args) {
+            if (arg.startsWith("--size="))
+                size = Integer.parseInt(arg.substring("--size=".length()));
+            else if (arg.equals("--offheap"))
+                offHeap = true;
+            else if (arg.equals("--layered"))
+                layered = true;
+            else if (arg.equals("--bottom-up"))
+                bottomUp = true;
+            else if (arg.startsWith("--mapped="))
+                mappedFile = Path.of(arg.substring("--mapped=".length()));
+            else if (arg.startsWith("--tt="))
+                ttBytes = Long.parseLong(arg.substring("--tt=".length())) << 20;
+            else if (arg.startsWith("--checkpoint="))
+                checkpointFile = Path.of(arg.substring("--checkpoint=".length()));
+            else if (arg.startsWith("--threads="))
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            else if (arg.startsWith("--max-length="))
+                maxLength = Integer.parseInt(arg.substring("--max-length=".length()));
+        }
+
+        // The parallel and the bottom-up counts bring their own memo and do not record subtrees, so fail instead of ignoring
+        String unsupported = (mappedFile != null ? " --mapped" : "") + (ttBytes > 0 ? " --tt" : "") + (offHeap ? " --offheap" : "")
+                + (layered ? " --layered" : "") + (checkpointFile != null ? " --checkpoint" : "");
+        if ((bottomUp || threads > 0) && !unsupported.isEmpty())
+            throw new IllegalArgumentException((bottomUp ? "--bottom-up" : "--threads") + " cannot be combined with" + unsupported);
+
+        maxLength = Math.min(maxLength, size * size);
+        long tag = maxLength < size * size ? minLength | (long) maxLength << 8 : minLength; // Memo files of full counts keep their tag
+
+        boolean denseFits = DenseMemo.bytesFor(size * size) <= Runtime.getRuntime().maxMemory() / 2;
+
+        long startTime = System.currentTimeMillis(); // Start timer
+
+        Number res;
+        if (bottomUp) {
+            var pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+            var counter = new LayeredCounter(size, minLength, maxLength, pool);
+            res = counter.count();
+            pool.shutdown();
+            System.out.println("Peak layers: " + (counter.peakFootprint() >> 20) + " MiB");
+        } else {
+            try (LongMemo memo = threads > 0 ? (denseFits ? new ConcurrentDenseMemo(size * size) : new ConcurrentLayeredMemo(new StateIndexer(Grid.of(size).allNodes(), true)))
+                    : mappedFile != null ? new MappedMemo(mappedFile, size * size, tag)
+                    : ttBytes > 0 ? new TranspositionTable(ttBytes)
+                    : offHeap ? new OffHeapMemo(size * size)
+                    : layered ? new LayeredMemo(new StateIndexer(Grid.of(size).allNodes(), true))
+                    : new DenseMemo(size * size)) {
+                if (memo instanceof MappedMemo mapped && mapped.reopened())
+                    System.out.println("Reusing " + mappedFile);
+                var counter = new Counter(size, minLength, maxLength, memo);
+                if (threads > 0) {
+                    var pool = new ForkJoinPool(threads);
+                    res = counter.countParallel(pool);
+                    pool.shutdown();
+                } else if (checkpointFile == null) {
+                    res = counter.count();
+                } else {
+                    try (var checkpoint = new Checkpoint(checkpointFile)) {
+                        System.out.println("Resuming with " + checkpoint.size() + " finished subtrees");
+                        res = counter.count(2, checkpoint);
+                    }
+                }
+                System.out.println("Memo: " + (memo.footprint() >> 20) + " MiB");
+            }
+        }
+
+        long stopTime = System.currentTimeMillis(); // Stop timer
+
+        System.out.println(res + " (" + (stopTime - startTime) + " ms)"); // Print result
+    }
+}
@@ -9,7 +9,7 @@ public class LockPatterns {
     public static void main(String[] args) {
         long startTime = System.currentTimeMillis(); // Start timer
 
-        int res = new Pattern(3).countValidSuccessors(4);
+        long res = new Pattern(3).countValidSuccessors(4);
 
         long stopTime = System.currentTimeMillis(); // Stop timer
 
@@ -1,19 +1,14 @@
 package de.javaabc.lockpatterns.oop;
 
-import de.javaabc.lockpatterns.util.Cache;
+import de.javaabc.lockpatterns.util.Grid;
 import de.javaabc.lockpatterns.util.MathUtil;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 public class Pattern {
-    // A Cache for the result of the nodesBetween() function
-    private static final Cache<List<Node>> NODES_BETWEEN_CACHE = new Cache<>();
-
-    // The width and height of the pattern, e.g. 3x3
-    private final int size;
+    // The geometry of the pattern grid, e.g. 3x3
+    private final Grid grid;
 
     // The reference to the previous pattern, e.g. (0|0)-(0|1)-(1|0) for the pattern (0|0)-(0|1)-(1|0)-(1|1)
     private final Pattern previous;
@@ -27,21 +22,26 @@ public class Pattern {
     // The set of all nodes in a (size x size) pattern that have not been used in this pattern so far
     private final SortedSet<Node> unusedNodes;
 
+    // The mask of all nodes in unusedNodes, see Grid#index(int, int)
+    private final long unusedMask;
+
     /**
      * Creates a new pattern.
      *
-     * @param size        the width and height of the grid
+     * @param grid        the geometry of the grid
      * @param previous    the reference to the previous pattern, e.g. (0|0)-(0|1)-(1|0) for the pattern (0|0)-(0|1)-(1|0)-(1|1)
      * @param lastNode    the last {@link Node} of this pattern, e.g. (1|1) for the pattern (0|0)-(0|1)-(1|0)-(1|1)
      * @param nodeCount   the number of nodes in this pattern
      * @param unusedNodes the set of all nodes in a (size x size) pattern that have not been used in this pattern so far
+     * @param unusedMask  the mask of all nodes in <code>unusedNodes</code>
      */
-    public Pattern(int size, Pattern previous, Node lastNode, int nodeCount, SortedSet<Node> unusedNodes) {
-        this.size = size;
+    public Pattern(Grid grid, Pattern previous, Node lastNode, int nodeCount, SortedSet<Node> unusedNodes, long unusedMask) {
+        this.grid = grid;
         this.previous = previous;
         this.lastNode = lastNode;
         this.nodeCount = nodeCount;
         this.unusedNodes = unusedNodes;
+        this.unusedMask = unusedMask;
     }
 
     /**
@@ -64,47 +64,7 @@ public class Pattern {
      * @param size the width and height of the grid
      */
     public Pattern(int size) {
-        this(size, null, null, 0, allNodes(size));
-    }
-
-    /**
-     * Computes all {@link Node}s that lie exactly on a straight line that connects two given nodes.
-     *
-     * @param a the first Node
-     * @param b the second Node
-     * @return a {@link List} of {@link Node}s that lie between <code>a</code> and <code>b</code>
-     */
-    private static List<Node> nodesBetween(Node a, Node b) {
-        return NODES_BETWEEN_CACHE.computeIfAbsent(() -> { // Do not compute if already cached
-
-            // Determine bounds of the enclosing rectangle of a and b
-            int minY = Math.min(a.y(), b.y());
-            int maxY = Math.max(a.y(), b.y());
-            int minX = Math.min(a.x(), b.x());
-            int maxX = Math.max(a.x(), b.x());
-
-            List<Node> res = new ArrayList<>();
-            if (a.x() == b.x()) { // If a and b lie on same column, return nodes of this row
-                for (int y = minY + 1; y < maxY; y++)
-                    res.add(new Node(y, minX));
-            } else if (a.y() == b.y()) { // If a and b lie on same row, return nodes of this row
-                for (int x = minX + 1; x < maxX; x++)
-                    res.add(new Node(minY, x));
-            } else {
-                // Compute minimal dy and dx steps that are the greatest divisor of the total difference between a and b
-                int dy = b.y() - a.y();
-                int dx = b.x() - a.x();
-                int gcd = Math.abs(MathUtil.gcd(dy, dx));
-                dy /= gcd;
-                dx /= gcd;
-
-                // Add all nodes that are n steps of size (dy|dx) between a and b
-                for (int y = a.y(), x = a.x(); y != b.y() || x != b.x(); y += dy, x += dx)
-                    res.add(new Node(y, x));
-            }
-            return res;
-
-        }, a, b);
+        this(Grid.of(size), null, null, 0, allNodes(size), Grid.of(size).allNodes());
     }
 
     /**
@@ -114,11 +74,8 @@ public class Pattern {
      * @return true iff <code>nextNode</code> is a valid successor of <code>this</code>
      */
     private boolean illegalNextNode(Node nextNode) {
-        if (lastNode != null)
-            for (Node intermediateNode : nodesBetween(lastNode, nextNode))
-                if (unusedNodes.contains(intermediateNode))
-                    return true;
-        return false;
+        return lastNode != null
+                && !grid.validSuccessor(grid.index(lastNode.y, lastNode.x), grid.index(nextNode.y, nextNode.x), unusedMask);
     }
 
     /**
@@ -127,14 +84,15 @@ public class Pattern {
      * @param minLength the minimal length for a valid pattern, e.g. 4
      * @return The total number of valid patterns starting with <code>this</code>
      */
-    public int countValidSuccessors(int minLength) {
-        int count = nodeCount >= minLength ? 1 : 0;
+    public long countValidSuccessors(int minLength) {
+        long count = nodeCount >= minLength ? 1L : 0L;
         for (Node nextNode : unusedNodes)
             if (!illegalNextNode(nextNode)) {
                 SortedSet<Node> nextUnused = new TreeSet<>(unusedNodes);
                 nextUnused.remove(nextNode);
-                Pattern next = new Pattern(size, this, nextNode, nodeCount + 1, nextUnused);
-                count += next.countValidSuccessors(minLength);
+                long nextUnusedMask = unusedMask & ~(1L << grid.index(nextNode.y, nextNode.x));
+                Pattern next = new Pattern(grid, this, nextNode, nodeCount + 1, nextUnused, nextUnusedMask);
+                count = Math.addExact(count, next.countValidSuccessors(minLength));
             }
         return count;
     }
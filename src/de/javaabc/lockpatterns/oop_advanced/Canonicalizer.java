@@ -0,0 +1,136 @@
+package de.javaabc.lockpatterns.oop_advanced;
+
+import de.javaabc.lockpatterns.util.Grid;
+
+/**
+ * Helper class to minimize a packed pattern state according to the rules of {@link Pattern#simplify()}.
+ * <p>
+ * A state consists of the mask of the unused nodes and the index of the last node, both with a row stride of 8, so
+ * every row of the pattern is one byte of the mask. The bounding box is computed once by folding the bytes, and the
+ * symmetries work on whole rows: flips by byte and bit reversal, transposes by a table that spreads a row byte into a
+ * column. No objects are created, and the rules are applied in the same order as by the recursive simplification,
+ * so both produce the same minimal pattern.
+ */
+final class Canonicalizer {
+    // The lowest bit of every row
+    private static final long FIRST_COLUMN = 0x0101010101010101L;
+
+    // SPREAD[row] has the bit (x|0) for every bit x of the row byte, i.e. the row as a column
+    private static final long[] SPREAD = new long[256];
+
+    static {
+        for (int row = 0; row < 256; row++)
+            for (int x = 0; x < 8; x++)
+                if ((row >>> x & 1) != 0)
+                    SPREAD[row] |= 1L << 8 * x;
+    }
+
+    private Canonicalizer() {
+    }
+
+    /**
+     * Minimizes a pattern state, see {@link Pattern#simplify()} for the rules.
+     *
+     * @param unused the mask of the unused nodes, with a row stride of 8 and at most 7x7 nodes
+     * @param last   the index <code>8 * y + x</code> of the last node
+     * @return the minimal state, packed by {@link Grid#pack(long, int)} with a row stride of 8
+     */
+    static long canonicalize(long unused, int last) {
+        int y = last >>> 3, x = last & 7;
+        long occupied = unused | 1L << last;
+        int rows = rows(occupied), columns = columns(occupied);
+        int minY = Integer.numberOfTrailingZeros(rows), minX = Integer.numberOfTrailingZeros(columns);
+        int height = 32 - Integer.numberOfLeadingZeros(rows) - minY;
+        int width = 32 - Integer.numberOfLeadingZeros(columns) - minX;
+
+        // 1) Move to (0|0), which keeps the bounding box tight for all following steps
+        unused >>>= 8 * minY + minX;
+        y -= minY;
+        x -= minX;
+
+        while (true) {
+            if (height > width) { // 2
+                unused = transpose(unused, height);
+                int tmp = y; y = x; x = tmp;
+                tmp = height; height = width; width = tmp;
+                continue;
+            }
+
+            if (y > height / 2) { // 3
+                unused = Long.reverseBytes(unused) >>> 8 * (8 - height);
+                y = height - 1 - y;
+                continue;
+            }
+
+            if (x > width / 2) { // 3
+                unused = (Long.reverse(Long.reverseBytes(unused)) >>> 8 - width) & FIRST_COLUMN * ((1 << width) - 1);
+                x = width - 1 - x;
+                continue;
+            }
+
+            if (height == width && y > x) { // 4
+                unused = transpose(unused, height);
+                int tmp = y; y = x; x = tmp;
+                continue;
+            }
+
+            occupied = unused | 1L << 8 * y + x;
+            int empty;
+            if (height <= 2 && (empty = Integer.numberOfTrailingZeros(~columns(occupied))) < width) { // 5
+                long left = FIRST_COLUMN * ((1 << empty) - 1);
+                unused = (unused & left) | (unused >>> 1 & ~left & FIRST_COLUMN * 0x7F);
+                if (x > empty)
+                    x--;
+                width--;
+                continue;
+            }
+
+            if (width <= 2 && (empty = Integer.numberOfTrailingZeros(~rows(occupied))) < height) { // 5
+                long top = (1L << 8 * empty) - 1;
+                unused = (unused & top) | (unused >>> 8 & ~top);
+                if (y > empty)
+                    y--;
+                height--;
+                continue;
+            }
+
+            return Grid.pack(unused, 8 * y + x);
+        }
+    }
+
+    /**
+     * @param mask a mask with a row stride of 8
+     * @return the mask of the rows that contain at least one node
+     */
+    private static int rows(long mask) {
+        long t = mask | mask >>> 4;
+        t |= t >>> 2;
+        t |= t >>> 1;
+        return (int) ((t & FIRST_COLUMN) * 0x0102040810204080L >>> 56);
+    }
+
+    /**
+     * @param mask a mask with a row stride of 8
+     * @return the mask of the columns that contain at least one node
+     */
+    private static int columns(long mask) {
+        long t = mask | mask >>> 32;
+        t |= t >>> 16;
+        t |= t >>> 8;
+        return (int) (t & 0xFF);
+    }
+
+    /**
+     * Mirrors a mask at its main diagonal, such that the node (y|x) becomes (x|y).
+     *
+     * @param mask   a mask with a row stride of 8
+     * @param height the number of non-empty rows
+     * @return the transposed mask
+     */
+    private static long transpose(long mask, int height) {
+        long res = 0L;
+        for (int y = 0; y < height; y++)
+            res |= SPREAD[(int) (mask >>> 8 * y & 0xFF)] << y;
+        return res;
+    }
+}
@@ -1,19 +1,117 @@
 package de.javaabc.lockpatterns.oop_advanced;
 
+import de.javaabc.lockpatterns.util.Cache;
+import de.javaabc.lockpatterns.util.Checkpoint;
+import de.javaabc.lockpatterns.util.LayeredMemo;
+import de.javaabc.lockpatterns.util.LongLongMap;
+import de.javaabc.lockpatterns.util.LongMemo;
+import de.javaabc.lockpatterns.util.Snapshot;
+import de.javaabc.lockpatterns.util.StateIndexer;
+import de.javaabc.lockpatterns.util.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 /**
  * OBJECT ORIENTED APPROACH #2
  *
  * - Can also handle 4x4 patterns (~20s runtime)
  * - Could handle 5x5 etc. in theory, but still too slow (And maybe also memory limitations)
+ * - Run with <code>--packed</code> to use the primitive {@link PackedPattern} representation instead
+ * - Run with <code>--packed --layered</code> to store its states in a {@link LayeredMemo} instead of a hash map
+ * - Run with <code>--parallel</code> to count the subtrees on all cores
+ * - Run with <code>--cache-limit=N</code> (and optionally <code>--eviction=CLOCK</code>) to bound the memo size
+ * - Run with <code>--tt=MIB</code> to use a fixed-size transposition table of MIB mebibytes as memo
+ * - Run with <code>--snapshot=FILE</code> to warm the memo from FILE (if it exists) and to save it there afterwards
+ * - Run with <code>--checkpoint=FILE</code> to record finished subtrees of length 2, so a restarted run skips them
+ * - Run with <code>--by-length</code> to count the patterns of every length in a single pass
+ * - Run with <code>--max-length=L</code> (and optionally <code>--size=N</code>) to only count patterns of up to L nodes
+ * - Run with <code>--graph-labeling</code> to merge all states with the same lines and blockers, see {@link VisibilityGraph}
  */
 public class LockPatterns {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        boolean packed = Arrays.asList(args).contains("--packed");
+        boolean parallel = Arrays.asList(args).contains("--parallel");
+        boolean byLength = Arrays.asList(args).contains("--by-length");
+        boolean layered = Arrays.asList(args).contains("--layered");
+        boolean graphLabeling = Arrays.asList(args).contains("--graph-labeling");
+        int cacheLimit = 0;
+        long ttBytes = 0L;
+        Path snapshot = null;
+        Path checkpointFile = null;
+        int size = 4;
+        int maxLength = Integer.MAX_VALUE;
+        var eviction = Cache.Eviction.LRU;
+        for (String arg : args) {
+            if (arg.startsWith("--cache-limit="))
+                cacheLimit = Integer.parseInt(arg.substring("--cache-limit=".length()));
+            else if (arg.startsWith("--eviction="))
+                eviction = Cache.Eviction.valueOf(arg.substring("--eviction=".length()));
+            else if (arg.startsWith("--tt="))
+                ttBytes = Long.parseLong(arg.substring("--tt=".length())) << 20;
+            else if (arg.startsWith("--snapshot="))
+                snapshot = Path.of(arg.substring("--snapshot=".length()));
+            else if (arg.startsWith("--checkpoint="))
+                checkpointFile = Path.of(arg.substring("--checkpoint=".length()));
+            else if (arg.startsWith("--size="))
+                size = Integer.parseInt(arg.substring("--size=".length()));
+            else if (arg.startsWith("--max-length="))
+                maxLength = Integer.parseInt(arg.substring("--max-length=".length()));
+        }
+        maxLength = Math.min(maxLength, size * size);
+        if (cacheLimit > 0)
+            Pattern.limitCache(cacheLimit, eviction);
+
+        int minLength = 4;
+        LongMemo memo = ttBytes > 0 ? new TranspositionTable(ttBytes)
+                : packed && layered ? new LayeredMemo(new StateIndexer(new PackedPattern(size).allNodes(), false))
+                : packed ? new LongLongMap() : null;
+        if (memo != null && !packed)
+            Pattern.useMemo(memo);
+        Pattern.useGraphLabeling(graphLabeling);
+
+        // Packed keys contain neither the grid size nor the minimal or maximal length, so use them as tag, marked as canonical states
+        long packedTag = 0x63616EL << 24 | (long) size << 16 | (long) minLength << 8 | maxLength;
+        if (snapshot != null && Files.exists(snapshot))
+            System.out.println("Restored " + (packed ? Snapshot.read(snapshot, packedTag, memo::put) : Pattern.loadCache(snapshot)) + " entries");
+
         long startTime = System.currentTimeMillis(); // Start timer
 
-        long res = new Pattern(4).countValidPatterns(4);
+        Number res;
+        if (byLength) {
+            long[] counts = new Pattern(size).countValidPatternsByLength();
+            long sum = 0L;
+            for (int length = minLength; length <= maxLength; length++) {
+                System.out.println(length + ": " + counts[length]);
+                sum = Math.addExact(sum, counts[length]);
+            }
+            res = sum;
+        } else if (checkpointFile != null) {
+            try (var checkpoint = new Checkpoint(checkpointFile)) {
+                System.out.println("Resuming with " + checkpoint.size() + " finished subtrees");
+                res = new Pattern(size).countValidPatterns(minLength, maxLength, 2, checkpoint);
+            }
+        } else if (packed) {
+            res = new PackedPattern(size).countValidPatterns(minLength, maxLength, memo);
+        } else if (parallel) {
+            res = new Pattern(size).countValidPatternsParallel(minLength, maxLength);
+        } else {
+            res = new Pattern(size).countValidPatternsExact(minLength, maxLength); // Exact even beyond 64 bits
+        }
 
         long stopTime = System.currentTimeMillis(); // Stop timer
 
         System.out.println(res + " (" + (stopTime - startTime) + " ms)"); // Print result
+        if (graphLabeling)
+            System.out.println(Pattern.cacheSize() + " memoized states");
+
+        if (snapshot != null) {
+            if (packed)
+                Snapshot.write(snapshot, memo, packedTag);
+            else
+                Pattern.saveCache(snapshot);
+        }
     }
 }
@@ -0,0 +1,138 @@
+package de.javaabc.lockpatterns.oop_advanced;
+
+import de.javaabc.lockpatterns.util.Grid;
+import de.javaabc.lockpatterns.util.LongLongMap;
+import de.javaabc.lockpatterns.util.LongMemo;
+
+/**
+ * A primitive variant of {@link Pattern}.
+ * <p>
+ * A state is represented by a <code>long</code> mask of the unused nodes and the <code>int</code> index of the last node,
+ * where the node (y|x) has the index <code>8 * y + x</code> like in {@link Pattern}. Successor iteration, validity
+ * checks and memo keys all work directly on these two primitives, so no {@link java.util.Set}s or node objects have to
+ * be created. Every successor is minimized by the {@link Canonicalizer}, so equivalent states share one memo entry.
+ */
+public class PackedPattern {
+    // The geometry used for line checks, with the same node indices as the Canonicalizer
+    private static final Grid GRID = Grid.of(Grid.MAX_SIZE);
+
+    // The mask of all nodes in the pattern grid
+    private final long allNodes;
+
+    // The number of nodes in the pattern grid
+    private final int nodeCount;
+
+    /**
+     * Creates the empty pattern.
+     *
+     * @param size the width and height of the pattern grid, at most 7
+     */
+    public PackedPattern(int size) {
+        if (size < 1 || size > 7)
+            throw new IllegalArgumentException("Unsupported grid size " + size);
+
+        long row = (1L << size) - 1;
+        this.allNodes = (0x0101010101010101L * row) & ((1L << 8 * size) - 1); // The first size bits of the first size rows
+        this.nodeCount = size * size;
+    }
+
+    /**
+     * @return the mask of all nodes in the pattern grid, with a row stride of 8
+     */
+    public long allNodes() {
+        return allNodes;
+    }
+
+    /**
+     * Computes the number of valid patterns that start with a given state.
+     *
+     * @param unused    the mask of the nodes that have not been used so far
+     * @param last      the index of the last node
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @param memo      the table of already computed states
+     * @return the total number of valid patterns starting with the given state
+     */
+    private long countValidPatterns(long unused, int last, int minLength, int maxLength, LongMemo memo) {
+        long key = Grid.pack(unused, last);
+        long cached = memo.get(key);
+        if (cached != LongMemo.MISSING)
+            return cached;
+
+        int length = nodeCount - Long.bitCount(unused);
+        long res = length >= minLength ? 1L : 0L;
+        for (long rest = length < maxLength ? unused : 0L; rest != 0L; rest &= rest - 1) { // Iterate through all unused nodes
+            int next = Long.numberOfTrailingZeros(rest);
+            if (GRID.validSuccessor(last, next, unused)) // No unused node in between
+                res = Math.addExact(res, countSuccessor(unused & ~(1L << next), next, minLength, maxLength, memo));
+        }
+
+        memo.put(key, res);
+        return res;
+    }
+
+    /**
+     * Minimizes a state and computes the number of valid patterns that start with it.
+     *
+     * @param unused    the mask of the nodes that have not been used so far
+     * @param last      the index of the last node
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @param memo      the table of already computed states
+     * @return the total number of valid patterns starting with the given state
+     */
+    private long countSuccessor(long unused, int last, int minLength, int maxLength, LongMemo memo) {
+        long state = Canonicalizer.canonicalize(unused, last);
+        return countValidPatterns(Grid.mask(state), Grid.last(state), minLength, maxLength, memo);
+    }
+
+    /**
+     * Computes the number of valid patterns in the (size x size) grid.
+     *
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @return the total number of valid patterns in a (size x size) grid
+     */
+    public long countValidPatterns(int minLength) {
+        return countValidPatterns(minLength, new LongLongMap());
+    }
+
+    /**
+     * Computes the number of valid patterns in the (size x size) grid, using a given memo table.
+     *
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param memo      an empty memo table, e.g. a fixed-size {@link de.javaabc.lockpatterns.util.TranspositionTable}
+     * @return the total number of valid patterns in a (size x size) grid
+     */
+    public long countValidPatterns(int minLength, LongMemo memo) {
+        return countValidPatterns(minLength, nodeCount, memo);
+    }
+
+    /**
+     * Computes the number of valid patterns in the (size x size) grid up to a maximal length. The search stops
+     * expanding at depth <code>maxLength</code>, so the cost grows with the maximal length rather than the grid size.
+     *
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return the total number of valid patterns with <code>minLength</code> to <code>maxLength</code> nodes
+     */
+    public long countValidPatterns(int minLength, int maxLength) {
+        return countValidPatterns(minLength, maxLength, new LongLongMap());
+    }
+
+    /**
+     * Computes the number of valid patterns in the (size x size) grid up to a maximal length, using a given memo table.
+     *
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @param memo      an empty memo table, which must be used for a single maximal length only
+     * @return the total number of valid patterns with <code>minLength</code> to <code>maxLength</code> nodes
+     */
+    public long countValidPatterns(int minLength, int maxLength, LongMemo memo) {
+        long res = minLength <= 0 ? 1L : 0L; // The empty pattern
+        for (long rest = maxLength >= 1 ? allNodes : 0L; rest != 0L; rest &= rest - 1) {
+            int first = Long.numberOfTrailingZeros(rest);
+            res = Math.addExact(res, countSuccessor(allNodes & ~(1L << first), first, minLength, maxLength, memo));
+        }
+        return res;
+    }
+}
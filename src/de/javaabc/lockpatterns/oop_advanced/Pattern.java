@@ -1,38 +1,119 @@
 package de.javaabc.lockpatterns.oop_advanced;
 
 import de.javaabc.lockpatterns.util.Cache;
-import de.javaabc.lockpatterns.util.MathUtil;
-
-import java.awt.*;
+import de.javaabc.lockpatterns.util.Checkpoint;
+import de.javaabc.lockpatterns.util.ConcurrentCache;
+import de.javaabc.lockpatterns.util.Grid;
+import de.javaabc.lockpatterns.util.LongMemo;
+import de.javaabc.lockpatterns.util.Snapshot;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Pattern {
-    // A cache to store the result of the nodesBetween() function
-    private static final Cache<Set<Node>> NODES_BETWEEN_CACHE = new Cache<>();
+    // The geometry used for line checks, large enough to contain every pattern
+    private static final Grid GRID = Grid.of(Grid.MAX_SIZE);
 
     // A cache to store the result of the countValidPatterns() function
     private static final Cache<Long> COUNT_VALID_PATTERNS_CACHE = new Cache<>();
 
+    // A cache to store the result of the countByLength() function, keyed on the pattern only
+    private static final Cache<long[]> COUNT_BY_LENGTH_CACHE = new Cache<>();
+
+    // A cache for the counts that do not fit into a long, which only contains the roots of overflowing subtrees
+    private static final Cache<BigInteger> EXACT_COUNT_CACHE = new Cache<>();
+
+    // A cache for the counts keyed on the canonical form of the line-of-sight structure, see useGraphLabeling()
+    private static final Cache<Long> GRAPH_COUNT_CACHE = new Cache<>();
+
+    // An optional primitive memo that replaces COUNT_VALID_PATTERNS_CACHE, see useMemo()
+    private static LongMemo countMemo;
+
+    // Whether the counts are keyed on the canonical form of the line-of-sight structure, see useGraphLabeling()
+    private static boolean graphLabeling;
+
+    // The mask of all nodes in the top left 6x6 corner of the grid, which can be packed into a LongMemo key
+    private static final long PACKABLE_NODES = 0x3F3F3F3F3F3FL;
+
+    // The tag of snapshot files with keys created by pack()
+    private static final long SNAPSHOT_TAG = 0x6F6F7032L;
+
+    // The random Zobrist key of every node while it is unused, indexed by Node#index()
+    private static final long[] UNUSED_KEYS = new long[GRID.nodeCount()];
+
+    // The random Zobrist key of every node while it is the last node, with the empty pattern at the end
+    private static final long[] LAST_KEYS = new long[GRID.nodeCount() + 1];
+
+    static {
+        var random = new SplittableRandom(0x5A0B7157L); // Fixed seed, so hashes are reproducible between runs
+        for (int i = 0; i < UNUSED_KEYS.length; i++)
+            UNUSED_KEYS[i] = random.nextLong();
+        for (int i = 0; i < LAST_KEYS.length; i++)
+            LAST_KEYS[i] = random.nextLong();
+    }
+
     // The last node of this pattern
     private final Node lastNode;
 
     // The set of nodes that have not been used in this pattern so far
     private final Set<Node> unusedNodes;
 
+    // The mask of all nodes in unusedNodes, see Node#index()
+    private final long unusedMask;
+
+    // The Zobrist hash of lastNode and unusedMask, see zobrist()
+    private final long hash;
+
     /**
      * Creates a new pattern.
      *
      * @param lastNode    the last node of this pattern
      * @param unusedNodes the set of nodes that have not been used in this pattern so far
+     * @param unusedMask  the mask of all nodes in <code>unusedNodes</code>
+     * @param hash        the Zobrist hash of <code>lastNode</code> and <code>unusedMask</code>
      */
-    private Pattern(Node lastNode, Set<Node> unusedNodes) {
+    private Pattern(Node lastNode, Set<Node> unusedNodes, long unusedMask, long hash) {
         this.lastNode = lastNode;
         this.unusedNodes = unusedNodes;
+        this.unusedMask = unusedMask;
+        this.hash = hash;
+    }
+
+    /**
+     * Creates a new pattern and computes its hash from scratch.
+     *
+     * @param lastNode    the last node of this pattern
+     * @param unusedNodes the set of nodes that have not been used in this pattern so far
+     * @param unusedMask  the mask of all nodes in <code>unusedNodes</code>
+     */
+    private Pattern(Node lastNode, Set<Node> unusedNodes, long unusedMask) {
+        this(lastNode, unusedNodes, unusedMask, zobrist(lastNode, unusedMask));
+    }
+
+    /**
+     * Computes the Zobrist hash of a pattern, i.e. the XOR of the random keys of its last node and all unused nodes.
+     * Appending a node changes only three keys, so {@link #append(Node)} updates the hash in constant time.
+     *
+     * @param lastNode   the last node of the pattern, or null for the empty pattern
+     * @param unusedMask the mask of all unused nodes
+     * @return the hash
+     */
+    private static long zobrist(Node lastNode, long unusedMask) {
+        long hash = LAST_KEYS[lastNode == null ? GRID.nodeCount() : lastNode.index()];
+        for (long rest = unusedMask; rest != 0L; rest &= rest - 1)
+            hash ^= UNUSED_KEYS[Long.numberOfTrailingZeros(rest)];
+        return hash;
     }
 
     /**
@@ -42,6 +123,9 @@ public class Pattern {
      * @return a {@link Set} of all possible nodes
      */
     private static Set<Node> allNodes(int size) {
+        if (size > 7) // The Canonicalizer packs states of up to 7x7 nodes
+            throw new IllegalArgumentException("Unsupported grid size " + size);
+
         Set<Node> allNodes = new HashSet<>();
         for (int y = 0; y < size; y++)
             for (int x = 0; x < size; x++)
@@ -49,53 +133,26 @@ public class Pattern {
         return allNodes;
     }
 
+    /**
+     * Computes the mask of a given set of nodes.
+     *
+     * @param nodes the {@link Set} of nodes
+     * @return the mask with the bit {@link Node#index()} set for every node in <code>nodes</code>
+     */
+    private static long maskOf(Set<Node> nodes) {
+        long mask = 0L;
+        for (Node node : nodes)
+            mask |= 1L << node.index();
+        return mask;
+    }
+
     /**
      * Creates the empty pattern.
      *
-     * @param size the width and height of the pattern grid
+     * @param size the width and height of the pattern grid, at most 7
      */
     public Pattern(int size) {
-        this(null, allNodes(size));
-    }
-
-    /**
-     * Computes all {@link Node}s that lie exactly on a straight line that connects two given nodes.
-     *
-     * @param a the first Node
-     * @param b the second Node
-     * @return a {@link Set} of {@link Node}s that lie between <code>a</code> and <code>b</code>
-     */
-    private Set<Node> nodesBetween(Node a, Node b) {
-        return NODES_BETWEEN_CACHE.computeIfAbsent(() -> { // Do not compute if already cached
-
-            // Determine bounds of the enclosing rectangle of a and b
-            int minY = Math.min(a.y(), b.y());
-            int maxY = Math.max(a.y(), b.y());
-            int minX = Math.min(a.x(), b.x());
-            int maxX = Math.max(a.x(), b.x());
-
-            Set<Node> res = new HashSet<>();
-            if (a.x() == b.x()) { // If a and b lie on same column, return nodes of this row
-                for (int y = minY + 1; y < maxY; y++)
-                    res.add(Node.at(y, minX));
-            } else if (a.y() == b.y()) { // If a and b lie on same row, return nodes of this row
-                for (int x = minX + 1; x < maxX; x++)
-                    res.add(Node.at(minY, x));
-            } else {
-                // Compute minimal dy and dx steps that are the greatest divisor of the total difference between a and b
-                int dy = b.y() - a.y();
-                int dx = b.x() - a.x();
-                int gcd = Math.abs(MathUtil.gcd(dy, dx));
-                dy /= gcd;
-                dx /= gcd;
-
-                // Add all nodes that are n steps of size (dy|dx) between a and b
-                for (int y = a.y(), x = a.x(); y != b.y() || x != b.x(); y += dy, x += dx)
-                    res.add(Node.at(y, x));
-            }
-            return res;
-
-        }, a, b);
+        this(null, allNodes(size), maskOf(allNodes(size)));
     }
 
     /**
@@ -108,9 +165,7 @@ public class Pattern {
         if (lastNode == null)
             return true;
 
-        return nodesBetween(lastNode, nextNode)
-                .stream()
-                .noneMatch(unusedNodes::contains);
+        return GRID.validSuccessor(lastNode.index(), nextNode.index(), unusedMask);
     }
 
     /**
@@ -119,219 +174,505 @@ public class Pattern {
      * @param nextNode the {@link Node} to append to <code>this</code>
      * @return the created {@link Pattern}
      */
-    private Pattern append(Node nextNode) {
+    Pattern append(Node nextNode) {
         Set<Node> newUnusedNodes = new HashSet<>(unusedNodes.size());
         newUnusedNodes.addAll(unusedNodes);
         newUnusedNodes.remove(nextNode);
-        return new Pattern(nextNode, newUnusedNodes);
+        int next = nextNode.index();
+        long newHash = hash ^ UNUSED_KEYS[next] ^ LAST_KEYS[next] ^ LAST_KEYS[lastNode == null ? GRID.nodeCount() : lastNode.index()];
+        return new Pattern(nextNode, newUnusedNodes, unusedMask & ~(1L << next), newHash);
     }
 
     /**
-     * Creates a {@link java.awt.Rectangle} representing the bounds of the {@link #unusedNodes} of this {@link Pattern}.
+     * Minimizes this {@link Pattern} to an equivalent pattern according to the following rules:
+     * <p>
+     * 1) The smallest (y|x)-coordinate of a minimal pattern is always (0|0)
+     * 2) A minimal pattern is either square or landscape
+     * 3) The last node of a pattern is always in the top left corner
+     * 4) The last node of a square pattern is always in the upper right triangle
+     * 5) A minimal pattern of width (or height) <= 2 has no empty rows (columns).
      *
-     * @return a new {@link Rectangle} instance
+     * @return a new {@link Pattern} instance with the minimized pattern, or <code>this</code> if already minimal
+     * @see Canonicalizer
      */
-    private Rectangle bounds() {
-        int minY = lastNode.y, maxY = lastNode.y;
-        int minX = lastNode.x, maxX = lastNode.x;
-        for (var node : unusedNodes) {
-            if (node.y < minY)
-                minY = node.y;
-            else if (node.y > maxY)
-                maxY = node.y;
+    Pattern simplify() {
+        long state = Canonicalizer.canonicalize(unusedMask, lastNode.index());
+        long mask = Grid.mask(state);
+        int last = Grid.last(state);
+        if (mask == unusedMask && last == lastNode.index())
+            return this;
+
+        // The symmetries move every node, so the hash is rebuilt while the set is filled anyway
+        Set<Node> nodes = new HashSet<>(unusedNodes.size());
+        long newHash = LAST_KEYS[last];
+        for (long rest = mask; rest != 0L; rest &= rest - 1) {
+            int index = Long.numberOfTrailingZeros(rest);
+            nodes.add(Node.ofIndex(index));
+            newHash ^= UNUSED_KEYS[index];
+        }
+        return new Pattern(Node.ofIndex(last), nodes, mask, newHash);
+    }
 
-            if (node.x < minX)
-                minX = node.x;
-            else if (node.x > maxX)
-                maxX = node.x;
+    /**
+     * Computes all valid patterns that start with the {@link Node} sequence of <code>this</code> {@link Pattern}
+     *
+     * @return a {@link Stream} of all valid successors
+     */
+    private Stream<Pattern> validSuccessors() {
+        return unusedNodes.stream()
+                .filter(this::validSuccessor)
+                .map(this::append)
+                .map(Pattern::simplify);
+    }
+
+    /**
+     * Computes the number of valid {@link Pattern}s starting with the {@link Node} sequence of <code>this</code> {@link Pattern}
+     *
+     * @param length    the current number of used nodes in <code>this</code> pattern
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return the total number of valid patterns starting with <code>this</code>
+     */
+    private long countValidPatterns(int length, int minLength, int maxLength) {
+        if (graphLabeling && lastNode != null)
+            return GRAPH_COUNT_CACHE.computeIfAbsent(() -> countSuccessors(length, minLength, maxLength),
+                    VisibilityGraph.certificate(unusedMask, lastNode.index()), length, minLength, maxLength);
+
+        if (countMemo == null)
+            return COUNT_VALID_PATTERNS_CACHE.computeIfAbsent(() -> // Do not compute if already cached
+                    countSuccessors(length, minLength, maxLength), this, length, minLength, maxLength);
+
+        long key = pack(length, minLength, maxLength);
+        long res = countMemo.get(key);
+        if (res == LongMemo.MISSING) {
+            res = countSuccessors(length, minLength, maxLength);
+            countMemo.put(key, res);
         }
-        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        return res;
     }
 
     /**
-     * Helper method to map all {@link Node}s of this {@link Pattern} by some mapper {@link Function}.
+     * Computes the number of valid {@link Pattern}s starting with <code>this</code>, without looking <code>this</code> up in a memo.
      *
-     * @param mapper the {@link Function} that maps one {@link Node} to another
-     * @return a new {@link Pattern} instance with the mapped nodes
+     * @param length    the current number of used nodes in <code>this</code> pattern
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return the total number of valid patterns starting with <code>this</code>
      */
-    private Pattern map(Function<Node, Node> mapper) {
-        return new Pattern(mapper.apply(lastNode), unusedNodes.stream().map(mapper).collect(Collectors.toSet()));
+    private long countSuccessors(int length, int minLength, int maxLength) {
+        if (length >= maxLength) // Do not expand any further
+            return length >= minLength ? 1L : 0L;
+
+        return validSuccessors()
+                .mapToLong(nextPattern -> nextPattern.countValidPatterns(length + 1, minLength, maxLength))
+                .reduce(length >= minLength ? 1L : 0L, Math::addExact); // Prepare for potentially gigantic numbers :'(
     }
 
     /**
-     * Shifts all {@link Node}s of this pattern by (dy|dx)
+     * Computes the exact number of valid {@link Pattern}s starting with <code>this</code>, even if it does not fit into
+     * a <code>long</code>. Every subtree is first counted on the <code>long</code> path, and only the subtrees that
+     * overflow are summed up as {@link BigInteger}s. Their counts are cached separately, so all other states keep
+     * their compact <code>long</code> memo entries.
      *
-     * @param dy the y-shift
-     * @param dx the x-shift
-     * @return a new {@link Pattern} instance with shifted {@link Node}s
+     * @param length    the current number of used nodes in <code>this</code> pattern
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return the total number of valid patterns starting with <code>this</code>
      */
-    private Pattern shift(int dy, int dx) {
-        return map(node -> Node.at(node.y + dy, node.x + dx));
+    private BigInteger countExact(int length, int minLength, int maxLength) {
+        BigInteger cached = EXACT_COUNT_CACHE.get(this, length, minLength, maxLength);
+        if (cached != null)
+            return cached;
+
+        try {
+            return BigInteger.valueOf(countValidPatterns(length, minLength, maxLength));
+        } catch (ArithmeticException e) { // The successors that do fit have been memoized before the overflow
+            BigInteger res = validSuccessors()
+                    .map(nextPattern -> nextPattern.countExact(length + 1, minLength, maxLength))
+                    .reduce(length >= minLength ? BigInteger.ONE : BigInteger.ZERO, BigInteger::add);
+            EXACT_COUNT_CACHE.put(res, this, length, minLength, maxLength);
+            return res;
+        }
     }
 
     /**
-     * Flips the y and x corrdinates for {@link Node}s of this pattern
+     * Computes the number of {@link Pattern}s that continue <code>this</code> pattern, grouped by the number of appended
+     * nodes. Since this does not depend on the length or the minimal length, it is cached for the pattern only.
      *
-     * @return a new {@link Pattern} instance with transposed {@link Node}s
+     * @return an array where the k-th element is the number of valid ways to append exactly k nodes, to be read only
      */
-    private Pattern transpose() {
-        return map(node -> Node.at(node.x, node.y));
+    private long[] countByLength() {
+        return COUNT_BY_LENGTH_CACHE.computeIfAbsent(() -> { // Do not compute if already cached
+
+            long[] res = new long[unusedNodes.size() + 1];
+            res[0] = 1L; // This pattern itself
+            for (var nextPattern : (Iterable<Pattern>) validSuccessors()::iterator) {
+                long[] next = nextPattern.countByLength();
+                for (int k = 0; k < next.length; k++)
+                    res[k + 1] = Math.addExact(res[k + 1], next[k]);
+            }
+            return res;
+
+        }, this);
     }
 
     /**
-     * Flips all {@link Node}s of this pattern vertically, such that the top row becomes the bottom row (and vice versa)
+     * Computes the number of valid {@link Pattern}s for every length in a single pass, assuming <code>this</code> is
+     * the empty pattern. The count for any range of lengths is the sum of the corresponding elements, e.g. the classic
+     * 389112 patterns of 4 to 9 nodes on 3x3.
      *
-     * @param height the height of this pattern
-     * @return a new {@link Pattern} instance with flipped {@link Node}s
+     * @return an array where the k-th element is the number of valid patterns with exactly k nodes
      */
-    private Pattern flipVertically(int height) {
-        return map(node -> Node.at(height - node.y - 1, node.x));
+    public long[] countValidPatternsByLength() {
+        return countByLength().clone();
     }
 
     /**
-     * Flips all {@link Node}s of this pattern horizontally, such that the left column becomes the right column (and vice versa)
+     * Packs <code>this</code> pattern and the parameters of a count into a single <code>long</code> memo key.
+     * This works for patterns of up to 6x6 nodes.
      *
-     * @param width the width of this pattern
-     * @return a new {@link Pattern} instance with flipped {@link Node}s
+     * @param length    the current number of used nodes in <code>this</code> pattern
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return 36 bits of unused nodes, followed by 6 bits each for the last node, the length, the minimal length and
+     * the maximal length
      */
-    private Pattern flipHorizontally(int width) {
-        return map(node -> Node.at(node.y, width - node.x - 1));
+    private long pack(int length, int minLength, int maxLength) {
+        int last = lastNode == null ? 63 : lastNode.index(); // 63 lies outside of 6x6, so it cannot be a real last node
+        if ((unusedMask & ~PACKABLE_NODES) != 0L || lastNode != null && (1L << last & PACKABLE_NODES) == 0L)
+            throw new IllegalStateException("Only patterns of up to 6x6 nodes can be packed");
+
+        long res = 0L;
+        for (int y = 0; y < 6; y++) // Compress the rows of 8 bits to 6 bits
+            res |= (unusedMask >>> 8 * y & 0x3F) << 6 * y;
+        // Lengths below 0 count the same as 0, so clamping them keeps a negative length from spilling into other fields
+        return res << 24 | (long) last << 18 | (long) length << 12
+                | (long) Math.max(0, Math.min(minLength, 63)) << 6 | Math.max(0, Math.min(maxLength, 63));
     }
 
     /**
-     * Removes the x-th column of this pattern.
+     * Restores the arguments of a count from a key created by {@link #pack(int, int, int)}.
      *
-     * @param x the index of the column to remove
-     * @return a new {@link Pattern} instance without the column at index x
+     * @param key the packed key
+     * @return the {@link Pattern}, the length, the minimal length and the maximal length as boxed objects
      */
-    private Pattern dropColumn(int x) {
-        return map(node -> node.x < x ? node : Node.at(node.y, node.x - 1));
+    private static Object[] unpack(long key) {
+        int maxLength = (int) (key & 63);
+        int minLength = (int) (key >>> 6 & 63);
+        int length = (int) (key >>> 12 & 63);
+        int last = (int) (key >>> 18 & 63);
+
+        long mask = 0L;
+        for (int y = 0; y < 6; y++) // Expand the rows of 6 bits to 8 bits
+            mask |= (key >>> 24 + 6 * y & 0x3F) << 8 * y;
+
+        Set<Node> unusedNodes = new HashSet<>();
+        for (long rest = mask; rest != 0L; rest &= rest - 1)
+            unusedNodes.add(Node.ofIndex(Long.numberOfTrailingZeros(rest)));
+
+        var pattern = new Pattern(last == 63 ? null : Node.ofIndex(last), unusedNodes, mask);
+        return new Object[]{pattern, length, minLength, maxLength};
     }
 
     /**
-     * Removes the y-th row of this pattern.
+     * Computes the number of valid {@link Pattern}s, assuming <code>this</code> is the empty pattern.
      *
-     * @param y the index of the row to remove
-     * @return a new {@link Pattern} instance without the row at index y
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @return the total number of valid patterns in a (size x size) grid
+     * @throws ArithmeticException if the number does not fit into a <code>long</code>, see {@link #countValidPatternsExact(int, int)}
      */
-    private Pattern dropRow(int y) {
-        return map(node -> node.y < y ? node : Node.at(node.y - 1, node.x));
+    public long countValidPatterns(int minLength) {
+        return countValidPatterns(minLength, unusedNodes.size());
     }
 
     /**
-     * Searches for a column index where no {@link Node} in the set of {@link #unusedNodes} exists.
+     * Computes the number of valid {@link Pattern}s up to a maximal length, assuming <code>this</code> is the empty
+     * pattern. The search stops expanding at depth <code>maxLength</code>, so the cost grows with the maximal length
+     * rather than with the grid size.
      *
-     * @param width the width of this {@link Pattern}
-     * @return the index of an empty column or -1 if there is no
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return the total number of valid patterns with <code>minLength</code> to <code>maxLength</code> nodes
+     * @throws ArithmeticException if the number does not fit into a <code>long</code>, see {@link #countValidPatternsExact(int, int)}
      */
-    private int findEmptyColumn(int width) {
-        boolean[] occupiedColumn = new boolean[width];
-        occupiedColumn[lastNode.x] = true;
-        for (Node n : unusedNodes)
-            occupiedColumn[n.x] = true;
-        for (int x = 0; x < width; x++)
-            if (!occupiedColumn[x])
-                return x;
-        return -1;
+    public long countValidPatterns(int minLength, int maxLength) {
+        return countValidPatterns(0, minLength, Math.min(maxLength, unusedNodes.size())); // Share the memo with the unbounded count
     }
 
     /**
-     * Searches for a row index where no {@link Node} in the set of {@link #unusedNodes} exists.
+     * Computes the exact number of valid {@link Pattern}s up to a maximal length, assuming <code>this</code> is the empty
+     * pattern. Unlike {@link #countValidPatterns(int, int)}, this also works for counts beyond 64 bits, while counts that
+     * fit are computed just as fast.
      *
-     * @param height the height of this {@link Pattern}
-     * @return the index of an empty row or -1 if there is no
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return the total number of valid patterns with <code>minLength</code> to <code>maxLength</code> nodes
      */
-    private int findEmptyRow(int height) {
-        boolean[] occupiedRow = new boolean[height];
-        occupiedRow[lastNode.y] = true;
-        for (Node n : unusedNodes)
-            occupiedRow[n.y] = true;
-        for (int y = 0; y < height; y++)
-            if (!occupiedRow[y])
-                return y;
-        return -1;
+    public BigInteger countValidPatternsExact(int minLength, int maxLength) {
+        return countExact(0, minLength, Math.min(maxLength, unusedNodes.size()));
     }
 
     /**
-     * Minimizes this {@link Pattern} to an equivalent pattern according to the following rules:
-     * <p>
-     * 1) The smallest (y|x)-coordinate of a minimal pattern is always (0|0)
-     * 2) A minimal pattern is either square or landscape
-     * 3) The last node of a pattern is always in the top left corner
-     * 4) The last node of a square pattern is always in the upper right triangle
-     * 5) A minimal pattern of width (or height) <= 2 has no empty rows (columns).
+     * Computes the number of valid {@link Pattern}s starting with <code>this</code>, where every simplified subtree at
+     * depth <code>depth</code> is only computed if the {@link Checkpoint} does not contain it yet.
      *
-     * @return a new {@link Pattern} instance with the minimized pattern, or <code>this</code> if already minimal
+     * @param length     the current number of used nodes in <code>this</code> pattern
+     * @param minLength  the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength  the maximal number of nodes in a counted pattern
+     * @param depth      the length of the patterns whose subtrees are recorded
+     * @param checkpoint the log of finished subtrees
+     * @return the total number of valid patterns starting with <code>this</code>
      */
-    private Pattern simplify() {
-        var bounds = bounds();
+    private long countValidPatterns(int length, int minLength, int maxLength, int depth, Checkpoint checkpoint) {
+        if (length < Math.min(depth, maxLength))
+            return (length >= minLength ? 1L : 0L) + validSuccessors()
+                    .mapToLong(nextPattern -> nextPattern.countValidPatterns(length + 1, minLength, maxLength, depth, checkpoint))
+                    .reduce(0L, Math::addExact);
+
+        String key = "oop_advanced/" + Long.toHexString(pack(length, minLength, maxLength));
+        Long finished = checkpoint.get(key);
+        if (finished != null)
+            return finished;
+
+        long res = countValidPatterns(length, minLength, maxLength);
+        checkpoint.record(key, res);
+        return res;
+    }
 
-        if (bounds.x > 0 || bounds.y > 0) // 1
-            return shift(-bounds.y, -bounds.x).simplify();
+    /**
+     * Computes the number of valid {@link Pattern}s, assuming <code>this</code> is the empty pattern, and skips all
+     * subtrees that a previous run has already recorded. This works for patterns of up to 6x6 nodes.
+     *
+     * @param minLength  the minmal number of nodes in a valid pattern, e.g. 4
+     * @param depth      the length of the patterns whose subtrees are recorded, e.g. 2
+     * @param checkpoint the log of finished subtrees
+     * @return the total number of valid patterns in a (size x size) grid
+     */
+    public long countValidPatterns(int minLength, int depth, Checkpoint checkpoint) {
+        return countValidPatterns(minLength, unusedNodes.size(), depth, checkpoint);
+    }
 
-        if (bounds.height > bounds.width) // 2
-            return transpose().simplify();
+    /**
+     * Computes the number of valid {@link Pattern}s up to a maximal length, assuming <code>this</code> is the empty
+     * pattern, and skips all subtrees that a previous run has already recorded. This works for patterns of up to 6x6 nodes.
+     *
+     * @param minLength  the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength  the maximal number of nodes in a counted pattern
+     * @param depth      the length of the patterns whose subtrees are recorded, e.g. 2
+     * @param checkpoint the log of finished subtrees
+     * @return the total number of valid patterns with <code>minLength</code> to <code>maxLength</code> nodes
+     */
+    public long countValidPatterns(int minLength, int maxLength, int depth, Checkpoint checkpoint) {
+        return countValidPatterns(0, minLength, Math.min(maxLength, unusedNodes.size()), depth, checkpoint);
+    }
 
-        if (lastNode.y > bounds.height / 2) // 3
-            return flipVertically(bounds.height).simplify();
+    /**
+     * Limits the number of memoized pattern counts, so that larger grids can be counted within a fixed heap.
+     * Evicted counts are computed again when needed.
+     *
+     * @param maxEntries the maximal number of memoized counts
+     * @param eviction   the policy that decides which count to drop
+     */
+    public static void limitCache(int maxEntries, Cache.Eviction eviction) {
+        COUNT_VALID_PATTERNS_CACHE.limit(maxEntries, eviction);
+    }
 
-        if (lastNode.x > bounds.width / 2) // 3
-            return flipHorizontally(bounds.width).simplify();
+    /**
+     * Stores the pattern counts in a primitive {@link LongMemo} instead of the default cache, e.g. a fixed-size
+     * {@link de.javaabc.lockpatterns.util.TranspositionTable}. This works for patterns of up to 6x6 nodes.
+     *
+     * @param memo the memo to use, or null to use the default cache again
+     */
+    public static void useMemo(LongMemo memo) {
+        countMemo = memo;
+    }
 
-        if (bounds.height == bounds.width && lastNode.y > lastNode.x) // 4
-            return transpose().simplify();
+    /**
+     * Keys the pattern counts on the canonical form of their line-of-sight structure instead of the simplified pattern,
+     * see {@link VisibilityGraph}. This merges states that are not congruent but have the same lines and blockers, at
+     * the cost of computing the canonical form for every lookup. The counts are kept in a separate cache, which is
+     * neither limited by {@link #limitCache(int, Cache.Eviction)} nor written by {@link #saveCache(Path)}.
+     *
+     * @param enabled true to key on the line-of-sight structure, false to use the default cache or memo again
+     */
+    public static void useGraphLabeling(boolean enabled) {
+        graphLabeling = enabled;
+    }
 
-        int empty;
-        if (bounds.height <= 2 && (empty = findEmptyColumn(bounds.width)) != -1) // 5
-            return dropColumn(empty).simplify();
+    /**
+     * Removes all memoized pattern counts, e.g. to measure a computation from scratch.
+     */
+    public static void clearCache() {
+        COUNT_VALID_PATTERNS_CACHE.clear();
+        GRAPH_COUNT_CACHE.clear();
+        COUNT_BY_LENGTH_CACHE.clear();
+        EXACT_COUNT_CACHE.clear();
+    }
 
-        if (bounds.width <= 2 && (empty = findEmptyRow(bounds.height)) != -1) // 5
-            return dropRow(empty).simplify();
+    /**
+     * @return the number of pattern counts in the default cache and the cache of {@link #useGraphLabeling(boolean)}
+     */
+    public static int cacheSize() {
+        return COUNT_VALID_PATTERNS_CACHE.size() + GRAPH_COUNT_CACHE.size();
+    }
 
-        return this;
+    /**
+     * Writes all memoized pattern counts to a {@link Snapshot} file. This works for patterns of up to 6x6 nodes.
+     *
+     * @param file the path of the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void saveCache(Path file) throws IOException {
+        if (countMemo != null)
+            Snapshot.write(file, countMemo, SNAPSHOT_TAG);
+        else
+            COUNT_VALID_PATTERNS_CACHE.snapshot(file, SNAPSHOT_TAG,
+                    keys -> ((Pattern) keys[0]).pack((int) keys[1], (int) keys[2], (int) keys[3]), Long::longValue);
     }
 
     /**
-     * Computes all valid patterns that start with the {@link Node} sequence of <code>this</code> {@link Pattern}
+     * Adds all pattern counts of a {@link Snapshot} file written by {@link #saveCache(Path)} to the memo.
      *
-     * @return a {@link Stream} of all valid successors
+     * @param file the path of the snapshot file
+     * @return the number of counts that have been read
+     * @throws IOException if the file cannot be read
      */
-    private Stream<Pattern> validSuccessors() {
-        return unusedNodes.stream()
-                .filter(this::validSuccessor)
-                .map(this::append)
-                .map(Pattern::simplify);
+    public static long loadCache(Path file) throws IOException {
+        if (countMemo != null)
+            return Snapshot.read(file, SNAPSHOT_TAG, countMemo::put);
+        return COUNT_VALID_PATTERNS_CACHE.restore(file, SNAPSHOT_TAG, Pattern::unpack, Long::valueOf);
     }
 
     /**
-     * Computes the number of valid {@link Pattern}s starting with the {@link Node} sequence of <code>this</code> {@link Pattern}
+     * Computes the number of valid {@link Pattern}s starting with <code>this</code>, using a shared memo for all threads.
      *
      * @param length    the current number of used nodes in <code>this</code> pattern
      * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @param memo      the memo that is shared by all workers of one computation
      * @return the total number of valid patterns starting with <code>this</code>
      */
-    private long countValidPatterns(int length, int minLength) {
-        return COUNT_VALID_PATTERNS_CACHE.computeIfAbsent(() -> { // Do not compute if already cached
+    private long countSequentially(int length, int minLength, int maxLength, ConcurrentCache<Long> memo) {
+        if (length >= maxLength) // Do not expand any further
+            return length >= minLength ? 1L : 0L;
 
-            long res = (length >= minLength ? 1L : 0L)
-                    + validSuccessors()
-                    .mapToLong(nextPattern -> nextPattern.countValidPatterns(length + 1, minLength))
-                    .sum();
-            if (res < 0L)
-                throw new ArithmeticException("Long overflow"); // Prepare for potentially gigantic numbers :'(
-            else return res;
+        return memo.computeIfAbsent(() -> { // Do not compute if already cached or being computed by another worker
 
-        }, this, length, minLength);
+            long res = length >= minLength ? 1L : 0L;
+            for (var nextPattern : (Iterable<Pattern>) validSuccessors()::iterator)
+                res = Math.addExact(res, nextPattern.countSequentially(length + 1, minLength, maxLength, memo));
+            return res;
+
+        }, this, length);
     }
 
     /**
-     * Computes the number of valid {@link Pattern}s, assuming <code>this</code> is the empty pattern.
+     * Computes the number of valid {@link Pattern}s in parallel, assuming <code>this</code> is the empty pattern.
      *
      * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @param pool      the {@link ForkJoinPool} to run the computation in
+     * @return the total number of valid patterns with <code>minLength</code> to <code>maxLength</code> nodes
+     */
+    public long countValidPatternsParallel(int minLength, int maxLength, ForkJoinPool pool) {
+        // Fork until there are enough tasks to keep every worker busy, then recurse sequentially.
+        // With less than two nodes, the number of tasks never grows, so the depth is bounded by the number of nodes.
+        int maxForkDepth = 1;
+        for (long tasks = unusedNodes.size(); tasks < 16L * pool.getParallelism() && maxForkDepth < unusedNodes.size();
+             tasks *= unusedNodes.size())
+            maxForkDepth++;
+
+        return pool.invoke(new CountTask(this, 0, minLength, Math.min(maxLength, unusedNodes.size()),
+                maxForkDepth, new ConcurrentCache<>()));
+    }
+
+    /**
+     * Computes the number of valid {@link Pattern}s in parallel, assuming <code>this</code> is the empty pattern.
+     *
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param pool      the {@link ForkJoinPool} to run the computation in
      * @return the total number of valid patterns in a (size x size) grid
      */
-    public long countValidPatterns(int minLength) {
-        return countValidPatterns(0, minLength);
+    public long countValidPatternsParallel(int minLength, ForkJoinPool pool) {
+        return countValidPatternsParallel(minLength, unusedNodes.size(), pool);
+    }
+
+    /**
+     * Computes the number of valid {@link Pattern}s up to a maximal length in parallel, assuming <code>this</code> is
+     * the empty pattern.
+     *
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @param maxLength the maximal number of nodes in a counted pattern
+     * @return the total number of valid patterns with <code>minLength</code> to <code>maxLength</code> nodes
+     */
+    public long countValidPatternsParallel(int minLength, int maxLength) {
+        return countValidPatternsParallel(minLength, maxLength, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the number of valid {@link Pattern}s in parallel, assuming <code>this</code> is the empty pattern.
+     *
+     * @param minLength the minmal number of nodes in a valid pattern, e.g. 4
+     * @return the total number of valid patterns in a (size x size) grid
+     */
+    public long countValidPatternsParallel(int minLength) {
+        return countValidPatternsParallel(minLength, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * A task that counts the valid patterns starting with a given {@link Pattern}.
+     * Near the root, the distinct successors are forked as subtasks, deeper subtrees are counted sequentially.
+     */
+    private static final class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        // The maximal number of queued tasks per worker before the subtrees are counted sequentially
+        private static final int MAX_SURPLUS_TASKS = 3;
+
+        private final Pattern pattern;
+        private final int length;
+        private final int minLength;
+        private final int maxLength;
+        private final int maxForkDepth;
+        private final ConcurrentCache<Long> memo;
+
+        /**
+         * Creates a new task.
+         *
+         * @param pattern      the pattern to count the successors of
+         * @param length       the current number of used nodes in <code>pattern</code>
+         * @param minLength    the minmal number of nodes in a valid pattern, e.g. 4
+         * @param maxLength    the maximal number of nodes in a counted pattern
+         * @param maxForkDepth the depth below which subtrees are always counted sequentially
+         * @param memo         the memo that is shared by all workers
+         */
+        private CountTask(Pattern pattern, int length, int minLength, int maxLength, int maxForkDepth, ConcurrentCache<Long> memo) {
+            this.pattern = pattern;
+            this.length = length;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.maxForkDepth = maxForkDepth;
+            this.memo = memo;
+        }
+
+        @Override
+        protected Long compute() {
+            if (length >= Math.min(maxForkDepth, maxLength) || getSurplusQueuedTaskCount() > MAX_SURPLUS_TASKS)
+                return pattern.countSequentially(length, minLength, maxLength, memo);
+
+            // Fork one task per distinct successor, equivalent successors are only counted once
+            Map<Pattern, Long> successors = pattern.validSuccessors()
+                    .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+            var tasks = successors.keySet().stream()
+                    .map(next -> new CountTask(next, length + 1, minLength, maxLength, maxForkDepth, memo))
+                    .toList();
+            invokeAll(tasks);
+
+            long res = length >= minLength ? 1L : 0L;
+            for (var task : tasks)
+                res = Math.addExact(res, Math.multiplyExact(successors.get(task.pattern), task.join()));
+            return res;
+        }
     }
 
     /**
@@ -340,19 +681,42 @@ public class Pattern {
      * @param y the y-coordinate of this node, indexed 0 (top) to height-1 (bottom)
      * @param x the x-coordinate of this node, indexed 0 (left) to width-1 (right)
      */
-    private record Node(int y, int x) {
-        // A cache to store the node instances in order to reduce memory overhead
-        private static final Cache<Node> CACHE = new Cache<>();
+    record Node(int y, int x) {
+        // The shared node instances in order to reduce memory overhead, indexed by index()
+        private static final Node[] NODES = new Node[GRID.nodeCount()];
+
+        static {
+            for (int y = 0; y < GRID.size(); y++)
+                for (int x = 0; x < GRID.size(); x++)
+                    NODES[GRID.index(y, x)] = new Node(y, x);
+        }
 
         /**
-         * Creates a new {@link Node} at the given position or returns a cached instance.
+         * Returns the shared {@link Node} instance at the given position.
          *
          * @param y the y-coordinate of this node, indexed 0 (top) to height-1 (bottom)
          * @param x the x-coordinate of this node, indexed 0 (left) to width-1 (right)
-         * @return a new {@link Node} instance or a cached one
+         * @return the shared {@link Node} instance
          */
         public static Node at(int y, int x) {
-            return CACHE.computeIfAbsent(() -> new Node(y, x), y, x);
+            return NODES[GRID.index(y, x)];
+        }
+
+        /**
+         * Returns the shared {@link Node} instance with a given index.
+         *
+         * @param index the index of the node, see {@link #index()}
+         * @return the shared {@link Node} instance
+         */
+        public static Node ofIndex(int index) {
+            return NODES[index];
+        }
+
+        /**
+         * @return the index of this node in the shared {@link Grid}
+         */
+        public int index() {
+            return GRID.index(y, x);
         }
 
         @Override
@@ -365,7 +729,7 @@ public class Pattern {
 
         @Override
         public int hashCode() {
-            return Objects.hash(y, x);
+            return 31 * y + x;
         }
 
         @Override
@@ -379,12 +743,12 @@ public class Pattern {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Pattern pattern = (Pattern) o;
-        return Objects.equals(lastNode, pattern.lastNode) && unusedNodes.equals(pattern.unusedNodes);
+        return hash == pattern.hash && unusedMask == pattern.unusedMask && Objects.equals(lastNode, pattern.lastNode);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(lastNode, unusedNodes);
+        return (int) (hash ^ hash >>> 32);
     }
 
     /**
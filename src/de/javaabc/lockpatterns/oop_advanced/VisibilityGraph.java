@@ -0,0 +1,267 @@
+package de.javaabc.lockpatterns.oop_advanced;
+
+import de.javaabc.lockpatterns.util.Grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Helper class to compute a canonical form of the line-of-sight structure of a pattern state.
+ * <p>
+ * The number of patterns that continue a state only depends on the unused nodes, the last node, and for every pair of
+ * these nodes the unused nodes that block the line between them. Used nodes are transparent and never matter again.
+ * This structure is a set of triples (u, v, w), where the unused node w lies between u and v. Two states with
+ * isomorphic structures have the same counts, even if they are not geometrically congruent.
+ * <p>
+ * The canonical form is computed by color refinement and individualization: the vertices are colored by their role
+ * in the triples until the coloring is stable, then every vertex of the first ambiguous color class is tried as the
+ * next unique vertex, and the smallest relabeled triple list of all branches wins. Vertices that can be swapped without
+ * changing the structure lead to the same result, so only one of them is tried.
+ */
+final class VisibilityGraph {
+    // The geometry used for line checks, with the same node indices as Pattern
+    private static final Grid GRID = Grid.of(Grid.MAX_SIZE);
+
+    // The number of bits per vertex in an encoded triple
+    private static final int BITS = 6;
+
+    // The number of vertices, where vertex 0 is the last node and all others are unused nodes
+    private final int size;
+
+    // The triples as (u, v, w) with u < v, three ints per triple
+    private final int[] triples;
+
+    // The encoded triples, to check whether a permutation of two vertices keeps the structure
+    private final Set<Integer> tripleSet = new HashSet<>();
+
+    // The indices into triples of all triples that contain a vertex
+    private final int[][] incidence;
+
+    // The smallest relabeled triple list found so far
+    private int[] best;
+
+    /**
+     * Creates the structure of a pattern state.
+     *
+     * @param unused the mask of the unused nodes, see {@link Pattern.Node#index()}
+     * @param last   the index of the last node
+     */
+    private VisibilityGraph(long unused, int last) {
+        int[] nodes = new int[Long.bitCount(unused) + 1];
+        nodes[0] = last;
+        int i = 1;
+        for (long rest = unused; rest != 0L; rest &= rest - 1)
+            nodes[i++] = Long.numberOfTrailingZeros(rest);
+        this.size = nodes.length;
+
+        int[] vertexOf = new int[64];
+        for (i = 0; i < size; i++)
+            vertexOf[nodes[i]] = i;
+
+        List<Integer> list = new ArrayList<>();
+        List<List<Integer>> incident = new ArrayList<>();
+        for (i = 0; i < size; i++)
+            incident.add(new ArrayList<>());
+        for (int u = 0; u < size; u++)
+            for (int v = u + 1; v < size; v++)
+                for (long rest = GRID.blockers(nodes[u], nodes[v]) & unused; rest != 0L; rest &= rest - 1) {
+                    int w = vertexOf[Long.numberOfTrailingZeros(rest)];
+                    int t = list.size() / 3;
+                    list.add(u);
+                    list.add(v);
+                    list.add(w);
+                    incident.get(u).add(t);
+                    incident.get(v).add(t);
+                    incident.get(w).add(t);
+                    tripleSet.add(encode(u, v, w));
+                }
+
+        this.triples = list.stream().mapToInt(Integer::intValue).toArray();
+        this.incidence = incident.stream().map(l -> l.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+    }
+
+    /**
+     * Computes the canonical form of the line-of-sight structure of a pattern state.
+     *
+     * @param unused the mask of the unused nodes, see {@link Pattern.Node#index()}
+     * @param last   the index of the last node
+     * @return a {@link Certificate} that is equal for two states iff their structures are isomorphic
+     */
+    static Certificate certificate(long unused, int last) {
+        var graph = new VisibilityGraph(unused, last);
+        int[] colors = new int[graph.size];
+        Arrays.fill(colors, 1);
+        colors[0] = 0; // The last node is always distinguished
+        graph.search(colors);
+        return new Certificate(graph.size, graph.best);
+    }
+
+    /**
+     * Encodes a triple into a single <code>int</code>.
+     *
+     * @param u the first end of the line
+     * @param v the second end of the line
+     * @param w the node between them
+     * @return the encoded triple, where the ends are sorted
+     */
+    private static int encode(int u, int v, int w) {
+        return Math.min(u, v) << 2 * BITS | Math.max(u, v) << BITS | w;
+    }
+
+    /**
+     * Refines a coloring, individualizes the vertices of the first ambiguous color class and keeps the smallest
+     * relabeled triple list of all branches.
+     *
+     * @param colors the color of every vertex, which is modified
+     */
+    private void search(int[] colors) {
+        refine(colors);
+
+        // Find the first color class with more than one vertex
+        int[] count = new int[size];
+        for (int c : colors)
+            count[c]++;
+        int target = 0;
+        while (target < size && count[target] <= 1)
+            target++;
+
+        if (target == size) { // Every vertex has a unique color, which is its canonical label
+            int[] relabeled = new int[triples.length / 3];
+            for (int t = 0; t < relabeled.length; t++)
+                relabeled[t] = encode(colors[triples[3 * t]], colors[triples[3 * t + 1]], colors[triples[3 * t + 2]]);
+            Arrays.sort(relabeled);
+            if (best == null || Arrays.compare(relabeled, best) < 0)
+                best = relabeled;
+            return;
+        }
+
+        List<Integer> tried = new ArrayList<>();
+        for (int v = 0; v < size; v++) {
+            if (colors[v] != target || isTwinOfAny(v, tried))
+                continue;
+            tried.add(v);
+
+            int[] next = new int[size]; // A color is the first rank of its class, so the rest of the class moves one rank up
+            for (int x = 0; x < size; x++)
+                next[x] = colors[x] == target && x != v ? target + 1 : colors[x];
+            search(next);
+        }
+    }
+
+    /**
+     * Replaces every color by the rank of the pair (color, roles in the triples) until the number of colors is stable.
+     * The rank of a color class is the number of vertices in smaller classes, so every color is less than the size.
+     *
+     * @param colors the color of every vertex, which is modified
+     */
+    private void refine(int[] colors) {
+        int classes = -1;
+        while (true) {
+            int[][] signatures = new int[size][];
+            for (int x = 0; x < size; x++) {
+                int[] incident = incidence[x];
+                int[] signature = new int[incident.length];
+                for (int i = 0; i < incident.length; i++) {
+                    int t = 3 * incident[i];
+                    int u = triples[t], v = triples[t + 1], w = triples[t + 2];
+                    signature[i] = x == w // Blocking node or end of the line
+                            ? 1 << 2 * (BITS + 1) | Math.min(colors[u], colors[v]) << BITS + 1 | Math.max(colors[u], colors[v])
+                            : colors[x == u ? v : u] << BITS + 1 | colors[w];
+                }
+                Arrays.sort(signature);
+                signatures[x] = signature;
+            }
+
+            Integer[] order = new Integer[size];
+            for (int x = 0; x < size; x++)
+                order[x] = x;
+            Arrays.sort(order, (a, b) -> colors[a] != colors[b] ? Integer.compare(colors[a], colors[b]) : Arrays.compare(signatures[a], signatures[b]));
+
+            int[] refined = new int[size];
+            int rank = 0;
+            for (int i = 1; i < size; i++) {
+                int a = order[i - 1], b = order[i];
+                if (colors[a] != colors[b] || !Arrays.equals(signatures[a], signatures[b]))
+                    rank = i;
+                refined[b] = rank;
+            }
+            refined[order[0]] = 0;
+
+            int newClasses = (int) Arrays.stream(refined).distinct().count();
+            System.arraycopy(refined, 0, colors, 0, size);
+            if (newClasses == classes)
+                return;
+            classes = newClasses;
+        }
+    }
+
+    /**
+     * Checks whether a vertex can be swapped with one of the given vertices without changing the structure.
+     *
+     * @param v     the vertex
+     * @param other the vertices to compare with
+     * @return true iff swapping <code>v</code> with a vertex of <code>other</code> maps every triple to a triple
+     */
+    private boolean isTwinOfAny(int v, List<Integer> other) {
+        for (int w : other)
+            if (isTwin(v, w))
+                return true;
+        return false;
+    }
+
+    /**
+     * @param a the first vertex
+     * @param b the second vertex
+     * @return true iff swapping <code>a</code> and <code>b</code> maps every triple to a triple
+     */
+    private boolean isTwin(int a, int b) {
+        if (incidence[a].length != incidence[b].length)
+            return false;
+
+        for (int t : incidence[a]) {
+            int u = swap(triples[3 * t], a, b), v = swap(triples[3 * t + 1], a, b), w = swap(triples[3 * t + 2], a, b);
+            if (!tripleSet.contains(encode(u, v, w)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param x a vertex
+     * @param a the first vertex to swap
+     * @param b the second vertex to swap
+     * @return the image of <code>x</code> under swapping <code>a</code> and <code>b</code>
+     */
+    private static int swap(int x, int a, int b) {
+        return x == a ? b : x == b ? a : x;
+    }
+
+    /**
+     * The canonical form of a line-of-sight structure, usable as a memo key.
+     *
+     * @param size    the number of vertices
+     * @param triples the sorted, canonically relabeled triples
+     */
+    record Certificate(int size, int[] triples) {
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Certificate that = (Certificate) o;
+            return size == that.size && Arrays.equals(triples, that.triples);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * size + Arrays.hashCode(triples);
+        }
+
+        @Override
+        public String toString() {
+            return size + Arrays.toString(triples);
+        }
+    }
+}
@@ -1,27 +1,76 @@
 package de.javaabc.lockpatterns.util;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.LongFunction;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 /**
  * A cache to store computed values, indexed by one or multiple key {@link Object}s.
+ * <p>
+ * This cache is not thread-safe, use {@link ConcurrentCache} to share computed values between threads.
+ * <p>
+ * By default, the cache grows without limit. A bounded cache evicts entries according to an {@link Eviction} policy
+ * once it is full, so evicted values will simply be computed again when they are requested the next time.
  *
  * @param <Value> the type of the values to store
  */
 public final class Cache<Value> {
+    // Whether to print a dot for every 10000 computed values
+    private static boolean printProgress = true;
+
     // The map that contains all values
-    private final Map<MultiKey, Value> table;
+    private Map<MultiKey, Value> table;
+
+    // The number of computed values, used to print progress
+    private long computations;
 
     /**
-     * Creates a new cache instance.
+     * Creates a new cache instance without a size limit.
      */
     public Cache() {
         table = new HashMap<>();
     }
 
+    /**
+     * Creates a new cache instance with a size limit.
+     *
+     * @param maxSize  the maximal number of values to keep
+     * @param eviction the policy that decides which value to drop when the cache is full
+     */
+    public Cache(int maxSize, Eviction eviction) {
+        limit(maxSize, eviction);
+    }
+
+    /**
+     * Limits the number of values in this cache. Values that do not fit are dropped.
+     *
+     * @param maxSize  the maximal number of values to keep
+     * @param eviction the policy that decides which value to drop when the cache is full
+     */
+    public void limit(int maxSize, Eviction eviction) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Cache size limit must be positive");
+
+        Map<MultiKey, Value> bounded = switch (eviction) {
+            case LRU -> new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<MultiKey, Value> eldest) {
+                    return size() > maxSize;
+                }
+            };
+            case CLOCK -> new ClockMap<>(maxSize);
+        };
+        if (table != null)
+            bounded.putAll(table);
+        table = bounded;
+    }
+
     /**
      * If the {@link Value} behind the given <code>keys</code> is present, return the value.
      * Otherwise, execute the <code>computation</code> {@link Supplier} to receive the value first.
@@ -31,34 +80,98 @@ public final class Cache<Value> {
      * @return the cached or computed value
      */
     public Value computeIfAbsent(Supplier<Value> computation, Object... keys) {
-        var cachedValue = table.get(new MultiKey(keys));
+        var key = new MultiKey(keys);
+        var cachedValue = table.get(key);
         if (cachedValue == null) {
             cachedValue = computation.get();
-            table.put(new MultiKey(keys), computation.get());
-            if (table.size() % 10000 == 0)
+            table.put(key, cachedValue);
+            if (++computations % 10000 == 0 && printProgress)
                 System.out.print(".");
         }
         return cachedValue;
     }
 
     /**
-     * Helper record to use more than one {@link Object} as key.
+     * Looks up the {@link Value} behind the given <code>keys</code> without computing it.
      *
-     * @param keys The key objects
+     * @param keys one or multiple {@link Object}s that together act as key elements
+     * @return the cached value, or null if there is none
      */
-    private record MultiKey(Object[] keys) {
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            MultiKey multiKey = (MultiKey) o;
-            return Arrays.equals(keys, multiKey.keys);
-        }
+    public Value get(Object... keys) {
+        return table.get(new MultiKey(keys));
+    }
 
-        @Override
-        public int hashCode() {
-            return Arrays.deepHashCode(keys);
-        }
+    /**
+     * Stores a {@link Value} that has already been computed, replacing any previous value behind the same keys.
+     *
+     * @param value the value to store
+     * @param keys  one or multiple {@link Object}s that together act as key elements
+     */
+    public void put(Value value, Object... keys) {
+        table.put(new MultiKey(keys), value);
+    }
+
+    /**
+     * Removes all values from this cache.
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Enables or disables the progress output of all caches, e.g. to keep benchmark output clean.
+     *
+     * @param enabled true to print a dot for every 10000 computed values
+     */
+    public static void printProgress(boolean enabled) {
+        printProgress = enabled;
+    }
+
+    /**
+     * Writes all values of this cache to a {@link Snapshot} file.
+     *
+     * @param file         the path of the snapshot file
+     * @param tag          an arbitrary number that identifies the computation
+     * @param keyEncoder   a function that packs the key elements of an entry into a single <code>long</code>
+     * @param valueEncoder a function that converts a value to a non-negative <code>long</code>
+     * @throws IOException if the file cannot be written
+     */
+    public void snapshot(Path file, long tag, ToLongFunction<Object[]> keyEncoder, ToLongFunction<Value> valueEncoder) throws IOException {
+        var memo = new LongLongMap(table.size());
+        table.forEach((key, value) -> memo.put(keyEncoder.applyAsLong(key.keys()), valueEncoder.applyAsLong(value)));
+        Snapshot.write(file, memo, tag);
+    }
+
+    /**
+     * Adds all values of a {@link Snapshot} file to this cache.
+     *
+     * @param file         the path of the snapshot file
+     * @param tag          the number that identifies the computation
+     * @param keyDecoder   a function that unpacks a <code>long</code> into the key elements of an entry
+     * @param valueDecoder a function that converts a <code>long</code> back to a value
+     * @return the number of values that have been read
+     * @throws IOException if the file cannot be read
+     */
+    public long restore(Path file, long tag, LongFunction<Object[]> keyDecoder, LongFunction<Value> valueDecoder) throws IOException {
+        return Snapshot.read(file, tag, (key, value) -> table.put(new MultiKey(keyDecoder.apply(key)), valueDecoder.apply(value)));
+    }
+
+    /**
+     * @return the number of values that are currently stored
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * The policy of a bounded {@link Cache} that decides which value to drop when the cache is full.
+     */
+    public enum Eviction {
+        // Drop the value that has not been accessed for the longest time
+        LRU,
+
+        // Drop the first value that the clock hand finds without a recent access, cheaper than LRU on every hit
+        CLOCK
     }
 
     @Override
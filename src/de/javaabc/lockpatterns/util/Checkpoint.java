@@ -0,0 +1,90 @@
+package de.javaabc.lockpatterns.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A log of finished subtrees of a long running count, so that a restarted run can skip them.
+ * <p>
+ * Every finished subtree is appended to a text file as one line <code>key count</code> and flushed immediately.
+ * When the file is opened again, all complete lines are read back, and a line that has been cut off by a crash is
+ * removed.
+ */
+public final class Checkpoint implements Closeable {
+    // The counts of all finished subtrees
+    private final Map<String, Long> finished = new HashMap<>();
+
+    // The writer that appends to the checkpoint file
+    private final BufferedWriter writer;
+
+    /**
+     * Opens a checkpoint file, or creates it if it does not exist yet.
+     *
+     * @param file the path of the checkpoint file
+     * @throws IOException if the file cannot be read or opened
+     */
+    public Checkpoint(Path file) throws IOException {
+        if (Files.exists(file)) {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            String complete = content.substring(0, content.lastIndexOf('\n') + 1);
+            if (complete.length() < content.length()) // Drop the line that has been cut off
+                Files.writeString(file, complete, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
+
+            for (String line : complete.split("\n")) {
+                int space = line.indexOf(' ');
+                if (space > 0)
+                    finished.put(line.substring(0, space), Long.parseLong(line.substring(space + 1)));
+            }
+        }
+
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Looks up a finished subtree.
+     *
+     * @param key the key of the subtree, without spaces or line breaks
+     * @return the count of the subtree, or null if it has not been finished yet
+     */
+    public Long get(String key) {
+        return finished.get(key);
+    }
+
+    /**
+     * Records a finished subtree and writes it to the file.
+     *
+     * @param key   the key of the subtree, without spaces or line breaks
+     * @param count the count of the subtree
+     */
+    public void record(String key, long count) {
+        if (finished.put(key, count) != null)
+            return;
+
+        try {
+            writer.write(key + " " + count + "\n");
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of finished subtrees
+     */
+    public int size() {
+        return finished.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,136 @@
+package de.javaabc.lockpatterns.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Map} with a fixed number of entries that evicts by the CLOCK algorithm.
+ * <p>
+ * Every entry has a reference bit that is set on access. When a new entry does not fit, a hand walks around the slots,
+ * clears the reference bits it passes and evicts the first entry that has not been referenced since the last round.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class ClockMap<K, V> extends AbstractMap<K, V> {
+    // The slot of every key
+    private final Map<K, Integer> slots = new HashMap<>();
+
+    // The keys of the slots
+    private final Object[] keys;
+
+    // The values of the slots
+    private final Object[] values;
+
+    // The reference bits of the slots
+    private final boolean[] referenced;
+
+    // The number of used slots
+    private int size;
+
+    // The slot that is inspected next when an entry has to be evicted
+    private int hand;
+
+    /**
+     * Creates a new, empty map.
+     *
+     * @param capacity the maximal number of entries
+     */
+    ClockMap(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        referenced = new boolean[capacity];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Integer slot = slots.get(key);
+        if (slot == null)
+            return null;
+
+        referenced[slot] = true;
+        return (V) values[slot];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            referenced[slot] = true;
+            return previous;
+        }
+
+        int free;
+        if (size < keys.length) {
+            free = size++;
+        } else {
+            while (referenced[hand]) { // Give referenced entries a second chance
+                referenced[hand] = false;
+                hand = (hand + 1) % keys.length;
+            }
+            free = hand;
+            hand = (hand + 1) % keys.length;
+            slots.remove(keys[free]);
+        }
+
+        keys[free] = key;
+        values[free] = value;
+        referenced[free] = true;
+        slots.put(key, free);
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        slots.clear();
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        Arrays.fill(referenced, false);
+        size = 0;
+        hand = 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<>() {
+                    private int slot = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < size;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Entry<K, V> next() {
+                        var entry = new SimpleImmutableEntry<>((K) keys[slot], (V) values[slot]);
+                        slot++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
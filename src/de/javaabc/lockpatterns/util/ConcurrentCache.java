@@ -0,0 +1,77 @@
+package de.javaabc.lockpatterns.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe variant of {@link Cache} with single-flight semantics.
+ * <p>
+ * For every key, exactly one thread executes the computation, while all other threads that request the same key wait
+ * for its result. The computation runs outside of any lock, so it may recursively call
+ * {@link #computeIfAbsent(Supplier, Object...)} for other keys, as long as the keys do not depend on each other in a
+ * cycle. Waiting inside a {@link java.util.concurrent.ForkJoinPool} worker lets the pool compensate with another thread.
+ *
+ * @param <Value> the type of the values to store
+ */
+public final class ConcurrentCache<Value> {
+    // The map that contains all finished and pending values
+    private final ConcurrentMap<MultiKey, CompletableFuture<Value>> table = new ConcurrentHashMap<>();
+
+    /**
+     * If the {@link Value} behind the given <code>keys</code> is present or being computed, return the value.
+     * Otherwise, execute the <code>computation</code> {@link Supplier} to receive the value first.
+     *
+     * @param computation a {@link Supplier} that computes the {@link Value} for the given <code>keys</code>
+     * @param keys        one or multiple {@link Object}s that together act as key elements
+     * @return the cached or computed value
+     */
+    public Value computeIfAbsent(Supplier<Value> computation, Object... keys) {
+        var key = new MultiKey(keys);
+        var future = table.get(key);
+        if (future == null) {
+            var created = new CompletableFuture<Value>();
+            future = table.putIfAbsent(key, created);
+            if (future == null) // This thread is responsible for the computation
+                return compute(key, created, computation);
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a computation and publishes its result to all waiting threads.
+     *
+     * @param key         the key of the value
+     * @param future      the pending entry for <code>key</code>
+     * @param computation a {@link Supplier} that computes the value
+     * @return the computed value
+     */
+    private Value compute(MultiKey key, CompletableFuture<Value> future, Supplier<Value> computation) {
+        Value value;
+        try {
+            value = computation.get();
+        } catch (RuntimeException | Error e) {
+            table.remove(key, future); // Allow a later retry
+            future.completeExceptionally(e);
+            throw e;
+        }
+        future.complete(value);
+        return value;
+    }
+
+    /**
+     * @return the number of finished and pending values
+     */
+    public int size() {
+        return table.size();
+    }
+}
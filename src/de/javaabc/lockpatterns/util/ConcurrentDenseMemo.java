@@ -0,0 +1,69 @@
+package de.javaabc.lockpatterns.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe {@link DenseMemo}, with the same layout in an {@link AtomicLongArray}.
+ * <p>
+ * There are no locks: a value is published by a single atomic exchange of its own slot. Two threads may compute the
+ * same value at the same time, which is harmless since they store the same result, so no compare-and-set is needed.
+ * The exchange returns the previous value, so these races are counted as a measure of contention, see {@link #duplicates()}.
+ */
+public final class ConcurrentDenseMemo implements LongMemo {
+    // The number of nodes in the grid
+    private final int nodeCount;
+
+    // The values, shifted by one so that the default value 0 means "missing"
+    private final AtomicLongArray table;
+
+    // The number of values that have been stored into a slot that already had one
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Creates a new memo table for every state of a grid with <code>nodeCount</code> nodes.
+     *
+     * @param nodeCount the number of nodes in the grid, at most 25
+     */
+    public ConcurrentDenseMemo(int nodeCount) {
+        long capacity = DenseMemo.capacity(nodeCount);
+        if (capacity > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many states for a dense memo: " + capacity);
+
+        this.nodeCount = nodeCount;
+        this.table = new AtomicLongArray((int) capacity);
+    }
+
+    @Override
+    public long get(long key) {
+        return table.get((int) DenseMemo.index(key, nodeCount)) - 1;
+    }
+
+    @Override
+    public void put(long key, long value) {
+        if (table.getAndSet((int) DenseMemo.index(key, nodeCount), value + 1) != 0L)
+            duplicates.increment(); // Another thread has computed the same state in the meantime
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < table.length(); i++) {
+            long value = table.get(i);
+            if (value != 0L)
+                action.accept(Grid.pack(i / nodeCount, i % nodeCount), value - 1);
+        }
+    }
+
+    /**
+     * @return the number of values that have been stored into a slot that already had one, i.e. how often racing
+     * threads have computed the same state
+     */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public long footprint() {
+        return (long) table.length() * Long.BYTES;
+    }
+}
@@ -0,0 +1,100 @@
+package de.javaabc.lockpatterns.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe {@link LayeredMemo}, where every layer is an {@link AtomicLongArray}.
+ * <p>
+ * There are no locks: a value is published by a single atomic exchange of its own slot, and a layer is allocated by the
+ * first thread that wins the compare-and-set of its reference. Two threads may compute the same value at the same
+ * time, which is harmless since they store the same result, so no compare-and-set of a slot is needed. The exchange
+ * returns the previous value, so these races are counted as a measure of contention, see {@link #duplicates()}.
+ * <p>
+ * A single layer must have less than 2^31 states.
+ */
+public final class ConcurrentLayeredMemo implements LongMemo {
+    // The mapping from states to positions within their layer
+    private final StateIndexer indexer;
+
+    // The values of every layer, shifted by one so that the default value 0 means "missing", or null if not allocated
+    private final AtomicReferenceArray<AtomicLongArray> layers;
+
+    // The number of values that have been stored into a slot that already had one
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Creates a new memo table.
+     *
+     * @param indexer the mapping from states to positions within their layer
+     */
+    public ConcurrentLayeredMemo(StateIndexer indexer) {
+        this.indexer = indexer;
+        this.layers = new AtomicReferenceArray<>(indexer.nodeCount() + 1);
+    }
+
+    /**
+     * Returns the values of a layer, allocating it if necessary.
+     *
+     * @param layer the number of nodes in the masks of the layer
+     * @return the values of the layer, shifted by one
+     */
+    private AtomicLongArray allocate(int layer) {
+        AtomicLongArray values = layers.get(layer);
+        if (values != null)
+            return values;
+
+        long size = indexer.layerSize(layer);
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many states in layer " + layer + ": " + size);
+        layers.compareAndSet(layer, null, new AtomicLongArray((int) size)); // Only one thread wins
+        return layers.get(layer);
+    }
+
+    @Override
+    public long get(long key) {
+        long mask = Grid.mask(key);
+        AtomicLongArray layer = layers.get(Long.bitCount(mask));
+        return layer == null ? MISSING : layer.get((int) indexer.index(mask, Grid.last(key))) - 1;
+    }
+
+    @Override
+    public void put(long key, long value) {
+        long mask = Grid.mask(key);
+        if (allocate(Long.bitCount(mask)).getAndSet((int) indexer.index(mask, Grid.last(key)), value + 1) != 0L)
+            duplicates.increment(); // Another thread has computed the same state in the meantime
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (int layer = 0; layer < layers.length(); layer++) {
+            AtomicLongArray values = layers.get(layer);
+            if (values != null)
+                for (int i = 0; i < values.length(); i++) {
+                    long value = values.get(i);
+                    if (value != 0L)
+                        action.accept(indexer.state(layer, i), value - 1);
+                }
+        }
+    }
+
+    /**
+     * @return the number of values that have been stored into a slot that already had one, i.e. how often racing
+     * threads have computed the same state
+     */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public long footprint() {
+        long longs = 0L;
+        for (int layer = 0; layer < layers.length(); layer++) {
+            AtomicLongArray values = layers.get(layer);
+            if (values != null)
+                longs += values.length();
+        }
+        return longs * Long.BYTES;
+    }
+}
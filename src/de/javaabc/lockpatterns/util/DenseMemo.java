@@ -0,0 +1,82 @@
+package de.javaabc.lockpatterns.util;
+
+/**
+ * A {@link LongMemo} that stores one value for every possible (mask, last node) state in a plain <code>long[]</code>.
+ * <p>
+ * The state {@link Grid#pack(long, int) pack(mask, last)} is stored at the index <code>mask * nodeCount + last</code>,
+ * so there is no hashing at all, but the table always occupies <code>8 * 2^nodeCount * nodeCount</code> bytes.
+ */
+public final class DenseMemo implements LongMemo {
+    // The number of nodes in the grid
+    private final int nodeCount;
+
+    // The values, shifted by one so that the default value 0 means "missing"
+    private final long[] table;
+
+    /**
+     * Creates a new memo table for every state of a grid with <code>nodeCount</code> nodes.
+     *
+     * @param nodeCount the number of nodes in the grid, at most 25
+     */
+    public DenseMemo(int nodeCount) {
+        long capacity = capacity(nodeCount);
+        if (capacity > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many states for a dense memo: " + capacity);
+
+        this.nodeCount = nodeCount;
+        this.table = new long[(int) capacity];
+    }
+
+    /**
+     * Computes the number of states in a grid.
+     *
+     * @param nodeCount the number of nodes in the grid
+     * @return the number of (mask, last node) combinations
+     */
+    public static long capacity(int nodeCount) {
+        return (1L << nodeCount) * nodeCount;
+    }
+
+    /**
+     * Computes the memory needed for a dense memo table, e.g. 8 MiB for 4x4 or 6.25 GiB for 5x5.
+     *
+     * @param nodeCount the number of nodes in the grid
+     * @return the size of the table in bytes
+     */
+    public static long bytesFor(int nodeCount) {
+        return capacity(nodeCount) * Long.BYTES;
+    }
+
+    /**
+     * Computes the position of a state in a dense table.
+     *
+     * @param key       a packed state
+     * @param nodeCount the number of nodes in the grid
+     * @return the index of the state in the table
+     */
+    static long index(long key, int nodeCount) {
+        return Grid.mask(key) * nodeCount + Grid.last(key);
+    }
+
+    @Override
+    public long get(long key) {
+        return table[(int) index(key, nodeCount)] - 1;
+    }
+
+    @Override
+    public void put(long key, long value) {
+        table[(int) index(key, nodeCount)] = value + 1;
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < table.length; i++)
+            if (table[i] != 0L)
+                action.accept(Grid.pack(i / nodeCount, i % nodeCount), table[i] - 1);
+    }
+
+    @Override
+    public long footprint() {
+        return (long) table.length * Long.BYTES;
+    }
+}
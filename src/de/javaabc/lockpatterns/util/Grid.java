@@ -0,0 +1,161 @@
+package de.javaabc.lockpatterns.util;
+
+/**
+ * The geometry of a (size x size) pattern grid.
+ * <p>
+ * The node (y|x) has the index <code>y * size + x</code>, so a set of nodes can be represented by a <code>long</code>
+ * mask. For every pair of nodes, the mask of all nodes that lie exactly on the straight line between them is
+ * precomputed once, so a transition from <code>last</code> to <code>next</code> is legal iff
+ * <code>(blockers(last, next) &amp; unused) == 0</code>.
+ */
+public final class Grid {
+    // The largest supported grid size, such that every node fits into a long mask
+    public static final int MAX_SIZE = 8;
+
+    // A cache to store the grid instances, so that each table is only computed once
+    private static final Cache<Grid> CACHE = new Cache<>();
+
+    // The width and height of the grid
+    private final int size;
+
+    // The number of nodes in the grid
+    private final int nodeCount;
+
+    // blockers[a][b] is the mask of all nodes that lie exactly on a straight line between the nodes a and b
+    private final long[][] blockers;
+
+    /**
+     * Creates a new grid and precomputes its blocker table.
+     *
+     * @param size the width and height of the grid
+     */
+    private Grid(int size) {
+        this.size = size;
+        this.nodeCount = size * size;
+        this.blockers = new long[nodeCount][nodeCount];
+        for (int a = 0; a < nodeCount; a++)
+            for (int b = 0; b < nodeCount; b++)
+                blockers[a][b] = nodesBetween(a, b);
+    }
+
+    /**
+     * Returns the grid of a given size.
+     *
+     * @param size the width and height of the grid, at most {@link #MAX_SIZE}
+     * @return a new {@link Grid} instance or a cached one
+     */
+    public static Grid of(int size) {
+        if (size < 1 || size > MAX_SIZE)
+            throw new IllegalArgumentException("Unsupported grid size " + size);
+
+        return CACHE.computeIfAbsent(() -> new Grid(size), size);
+    }
+
+    /**
+     * Computes the mask of all nodes that lie exactly on a straight line that connects two given nodes.
+     *
+     * @param a the index of the first node
+     * @param b the index of the second node
+     * @return the mask of the nodes strictly between <code>a</code> and <code>b</code>
+     */
+    private long nodesBetween(int a, int b) {
+        if (a == b)
+            return 0L;
+
+        // Compute minimal dy and dx steps that are the greatest divisor of the total difference between a and b
+        int dy = b / size - a / size;
+        int dx = b % size - a % size;
+        int gcd = Math.abs(MathUtil.gcd(dy, dx));
+        dy /= gcd;
+        dx /= gcd;
+
+        // Add all nodes that are n steps of size (dy|dx) between a and b
+        long res = 0L;
+        for (int i = 1; i < gcd; i++)
+            res |= 1L << (a + i * (dy * size + dx));
+        return res;
+    }
+
+    /**
+     * @return the width and height of this grid
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of nodes in this grid
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the mask that contains every node of this grid
+     */
+    public long allNodes() {
+        return nodeCount == 64 ? -1L : (1L << nodeCount) - 1;
+    }
+
+    /**
+     * Computes the index of the node (y|x).
+     *
+     * @param y the y-coordinate, indexed 0 (top) to size-1 (bottom)
+     * @param x the x-coordinate, indexed 0 (left) to size-1 (right)
+     * @return the index of the node in a mask
+     */
+    public int index(int y, int x) {
+        return y * size + x;
+    }
+
+    /**
+     * Packs a state of a pattern into a single <code>long</code>, e.g. to use it as a {@link LongMemo} key.
+     * This works for grids of up to 7x7 nodes.
+     *
+     * @param mask a mask of nodes, e.g. the unused or visited ones
+     * @param last the index of the last node
+     * @return the packed state
+     */
+    public static long pack(long mask, int last) {
+        return mask << 6 | last;
+    }
+
+    /**
+     * @param state a state created by {@link #pack(long, int)}
+     * @return the mask of the packed state
+     */
+    public static long mask(long state) {
+        return state >>> 6;
+    }
+
+    /**
+     * @param state a state created by {@link #pack(long, int)}
+     * @return the index of the last node of the packed state
+     */
+    public static int last(long state) {
+        return (int) (state & 63);
+    }
+
+    /**
+     * Returns the mask of all nodes that lie exactly on a straight line between two given nodes.
+     *
+     * @param a the index of the first node
+     * @param b the index of the second node
+     * @return the mask of the nodes strictly between <code>a</code> and <code>b</code>
+     */
+    public long blockers(int a, int b) {
+        return blockers[a][b];
+    }
+
+    /**
+     * Determines whether a transition between two nodes is legal.
+     *
+     * @param last   the index of the node to connect from
+     * @param next   the index of the node to connect to
+     * @param unused the mask of the nodes that have not been used so far
+     * @return true iff no unused node lies between <code>last</code> and <code>next</code>
+     */
+    public boolean validSuccessor(int last, int next, long unused) {
+        return (blockers[last][next] & unused) == 0L;
+    }
+}
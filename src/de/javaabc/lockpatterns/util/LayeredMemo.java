@@ -0,0 +1,88 @@
+package de.javaabc.lockpatterns.util;
+
+/**
+ * A {@link LongMemo} that stores one value for every state in a <code>long[]</code> per layer, i.e. per number of nodes
+ * in the mask, where the position within a layer is computed by a {@link StateIndexer}.
+ * <p>
+ * Like {@link DenseMemo}, a lookup is a plain array read without hashing, but every slot belongs to a possible state, so
+ * the memory is exactly one long per state of the layers that are in use. A layer is allocated when its first value is
+ * stored, so a count up to a maximal length never allocates the larger layers, and a layer that is not needed anymore
+ * can be released by {@link #release(int)}.
+ * <p>
+ * This memo is not thread-safe. A single layer must have less than 2^31 states.
+ */
+public final class LayeredMemo implements LongMemo {
+    // The mapping from states to positions within their layer
+    private final StateIndexer indexer;
+
+    // The values of every layer, shifted by one so that the default value 0 means "missing", or null if not allocated
+    private final long[][] layers;
+
+    /**
+     * Creates a new memo table.
+     *
+     * @param indexer the mapping from states to positions within their layer
+     */
+    public LayeredMemo(StateIndexer indexer) {
+        this.indexer = indexer;
+        this.layers = new long[indexer.nodeCount() + 1][];
+    }
+
+    /**
+     * Returns the values of a layer, allocating it if necessary.
+     *
+     * @param layer the number of nodes in the masks of the layer
+     * @return the values of the layer, shifted by one
+     */
+    private long[] allocate(int layer) {
+        if (layers[layer] == null) {
+            long size = indexer.layerSize(layer);
+            if (size > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Too many states in layer " + layer + ": " + size);
+            layers[layer] = new long[(int) size];
+        }
+        return layers[layer];
+    }
+
+    @Override
+    public long get(long key) {
+        long mask = Grid.mask(key);
+        long[] layer = layers[Long.bitCount(mask)];
+        return layer == null ? MISSING : layer[(int) indexer.index(mask, Grid.last(key))] - 1;
+    }
+
+    @Override
+    public void put(long key, long value) {
+        long mask = Grid.mask(key);
+        allocate(Long.bitCount(mask))[(int) indexer.index(mask, Grid.last(key))] = value + 1;
+    }
+
+    /**
+     * Frees the values of a layer, e.g. when no state with this number of nodes will be looked up anymore.
+     *
+     * @param layer the number of nodes in the masks of the layer
+     */
+    public void release(int layer) {
+        layers[layer] = null;
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (int layer = 0; layer < layers.length; layer++) {
+            long[] values = layers[layer];
+            if (values != null)
+                for (int i = 0; i < values.length; i++)
+                    if (values[i] != 0L)
+                        action.accept(indexer.state(layer, i), values[i] - 1);
+        }
+    }
+
+    @Override
+    public long footprint() {
+        long longs = 0L;
+        for (long[] values : layers)
+            if (values != null)
+                longs += values.length;
+        return longs * Long.BYTES;
+    }
+}
@@ -0,0 +1,202 @@
+package de.javaabc.lockpatterns.util;
+
+/**
+ * A hash based {@link LongMemo} with primitive <code>long</code> keys and values in parallel arrays.
+ * <p>
+ * Collisions are resolved by linear probing. When the table gets too full, a table of twice the size is allocated and
+ * the entries are moved over incrementally by the following operations, so there is never a pause to rehash all of
+ * them at once. Lookups do not allocate, and an entry needs 16 bytes per slot.
+ * <p>
+ * This map is not thread-safe. The key <code>-1</code> is not supported.
+ */
+public final class LongLongMap implements LongMemo {
+    // The maximal ratio of used slots before the table grows
+    private static final double MAX_LOAD = 0.75;
+
+    // The number of slots of the old table that are moved with every operation during a resize
+    private static final int MIGRATION_STEP = 16;
+
+    // The keys shifted by one, so that 0 marks an empty slot
+    private long[] keys;
+
+    // The values, at the same position as their keys
+    private long[] values;
+
+    // The number of bits of a slot index
+    private int bits;
+
+    // The number of entries in the current table
+    private int size;
+
+    // The number of entries after which the table grows
+    private int threshold;
+
+    // The keys of the table that is being migrated, or null if there is none
+    private long[] oldKeys;
+
+    // The values of the table that is being migrated
+    private long[] oldValues;
+
+    // The number of entries in the old table that have not been migrated yet
+    private int oldSize;
+
+    // The next slot of the old table to migrate
+    private int migrationPos;
+
+    /**
+     * Creates a new map.
+     *
+     * @param expectedSize the number of entries that can be stored before the map has to grow
+     */
+    public LongLongMap(int expectedSize) {
+        bits = 4;
+        while ((1 << bits) * MAX_LOAD < expectedSize)
+            bits++;
+        allocate();
+    }
+
+    /**
+     * Creates a new, small map.
+     */
+    public LongLongMap() {
+        this(0);
+    }
+
+    /**
+     * Allocates an empty table with 2^bits slots.
+     */
+    private void allocate() {
+        keys = new long[1 << bits];
+        values = new long[1 << bits];
+        size = 0;
+        threshold = (int) ((1 << bits) * MAX_LOAD);
+    }
+
+    /**
+     * Computes the first slot for a key by Fibonacci hashing.
+     *
+     * @param key  the key
+     * @param bits the number of bits of a slot index
+     * @return the index of the first slot to probe
+     */
+    private static int slot(long key, int bits) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    /**
+     * Searches a table for a key.
+     *
+     * @param keys the keys of the table, shifted by one
+     * @param bits the number of bits of a slot index of the table
+     * @param key  the key, shifted by one
+     * @return the slot that contains the key, or the empty slot where it belongs
+     */
+    private static int find(long[] keys, int bits, long key) {
+        int mask = (1 << bits) - 1;
+        int i = slot(key, bits);
+        while (keys[i] != 0L && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * Moves a few entries of the old table to the current one.
+     *
+     * @param steps the maximal number of old slots to process
+     */
+    private void migrate(int steps) {
+        for (int end = Math.min(migrationPos + steps, oldKeys.length); migrationPos < end; migrationPos++) {
+            long key = oldKeys[migrationPos];
+            if (key == 0L)
+                continue;
+
+            int i = find(keys, bits, key);
+            if (keys[i] == 0L) { // A newer entry in the current table wins
+                keys[i] = key;
+                values[i] = oldValues[migrationPos];
+                size++;
+            }
+            oldSize--;
+        }
+
+        if (migrationPos == oldKeys.length) {
+            oldKeys = null;
+            oldValues = null;
+        }
+    }
+
+    /**
+     * Starts to migrate all entries into a table of twice the size.
+     */
+    private void grow() {
+        if (oldKeys != null) // Finish the previous migration first
+            migrate(oldKeys.length);
+
+        oldKeys = keys;
+        oldValues = values;
+        oldSize = size;
+        migrationPos = 0;
+
+        bits++;
+        allocate();
+    }
+
+    @Override
+    public long get(long key) {
+        if (oldKeys != null)
+            migrate(MIGRATION_STEP);
+
+        int i = find(keys, bits, key + 1);
+        if (keys[i] != 0L)
+            return values[i];
+
+        if (oldKeys != null) {
+            i = find(oldKeys, bits - 1, key + 1);
+            if (oldKeys[i] != 0L)
+                return oldValues[i];
+        }
+        return MISSING;
+    }
+
+    @Override
+    public void put(long key, long value) {
+        if (oldKeys != null)
+            migrate(MIGRATION_STEP);
+
+        int i = find(keys, bits, key + 1);
+        if (keys[i] == 0L) {
+            if (size >= threshold) {
+                grow();
+                i = find(keys, bits, key + 1);
+            }
+            keys[i] = key + 1;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != 0L)
+                action.accept(keys[i] - 1, values[i]);
+
+        if (oldKeys != null) // Entries that have not been migrated yet and are not shadowed by a newer one
+            for (int i = migrationPos; i < oldKeys.length; i++)
+                if (oldKeys[i] != 0L && keys[find(keys, bits, oldKeys[i])] == 0L)
+                    action.accept(oldKeys[i] - 1, oldValues[i]);
+    }
+
+    /**
+     * @return the number of entries, where an entry that has been overwritten during a resize may be counted twice
+     */
+    public int size() {
+        return size + (oldKeys == null ? 0 : oldSize);
+    }
+
+    @Override
+    public long footprint() {
+        long slots = keys.length + (oldKeys == null ? 0 : oldKeys.length);
+        return slots * 2 * Long.BYTES;
+    }
+}
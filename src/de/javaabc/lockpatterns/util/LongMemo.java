@@ -0,0 +1,60 @@
+package de.javaabc.lockpatterns.util;
+
+/**
+ * A memo table that maps primitive <code>long</code> keys to non-negative <code>long</code> values.
+ * <p>
+ * Keys are usually packed states created by {@link Grid#pack(long, int)}.
+ */
+public interface LongMemo extends AutoCloseable {
+    // The value returned by get() if there is no entry for a key
+    long MISSING = -1L;
+
+    /**
+     * Looks up the value for a given key.
+     *
+     * @param key the key to look up
+     * @return the stored value, or {@link #MISSING} if there is none
+     */
+    long get(long key);
+
+    /**
+     * Stores a value for a given key.
+     *
+     * @param key   the key to store the value for
+     * @param value the non-negative value to store
+     */
+    void put(long key, long value);
+
+    /**
+     * Performs an action for every stored entry, in no particular order.
+     *
+     * @param action the action to perform
+     */
+    void forEach(EntryConsumer action);
+
+    /**
+     * @return the number of bytes occupied by this memo table
+     */
+    long footprint();
+
+    /**
+     * Releases all resources of this memo table. It must not be used afterwards.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * An action on a memo entry.
+     */
+    @FunctionalInterface
+    interface EntryConsumer {
+        /**
+         * Performs this action on an entry.
+         *
+         * @param key   the key of the entry
+         * @param value the value of the entry
+         */
+        void accept(long key, long value);
+    }
+}
@@ -0,0 +1,145 @@
+package de.javaabc.lockpatterns.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link LongMemo} with the same layout as {@link DenseMemo}, stored in a memory-mapped file.
+ * <p>
+ * The operating system pages the table in on demand, so it may be larger than the available RAM. A value is only
+ * written once its subtree has been computed completely, so the file can be reopened by a later run (e.g. after a
+ * crash) and all finished sub-results are reused instead of recomputed.
+ */
+public final class MappedMemo implements LongMemo {
+    // The number of longs per mapped chunk as a power of two
+    private static final int CHUNK_SHIFT = 27;
+
+    // The mask to get the position of a long within its chunk
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    // The value at the start of every memo file
+    private static final long MAGIC = 0x4C4F434B4D454D4FL; // "LOCKMEMO"
+
+    // The size of the file header: magic, node count and tag
+    private static final int HEADER_BYTES = 3 * Long.BYTES;
+
+    // The number of nodes in the grid
+    private final int nodeCount;
+
+    // The channel of the memo file
+    private final FileChannel channel;
+
+    // The mapped chunks, or null if this memo has been closed
+    private MappedByteBuffer[] chunks;
+
+    // True iff an existing memo file has been reopened
+    private final boolean reopened;
+
+    /**
+     * Opens a memo file, or creates it if it does not exist yet.
+     *
+     * @param file      the path of the memo file
+     * @param nodeCount the number of nodes in the grid
+     * @param tag       an arbitrary number that identifies the computation, e.g. the minimal pattern length
+     * @throws IOException           if the file cannot be opened or mapped
+     * @throws IllegalStateException if the file has been created for a different grid or tag
+     */
+    public MappedMemo(Path file, int nodeCount, long tag) throws IOException {
+        long capacity = DenseMemo.capacity(nodeCount);
+
+        this.nodeCount = nodeCount;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.reopened = channel.size() > 0;
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (reopened) {
+                channel.read(header, 0);
+                header.flip();
+                if (header.getLong() != MAGIC || header.getLong() != nodeCount || header.getLong() != tag)
+                    throw new IllegalStateException(file + " has been created for a different computation");
+            } else {
+                header.putLong(MAGIC).putLong(nodeCount).putLong(tag).flip();
+                channel.write(header, 0);
+            }
+
+            this.chunks = new MappedByteBuffer[(int) ((capacity + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long longs = Math.min(capacity - ((long) i << CHUNK_SHIFT), 1L << CHUNK_SHIFT);
+                long position = HEADER_BYTES + ((long) i << CHUNK_SHIFT) * Long.BYTES;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, longs * Long.BYTES);
+                chunks[i].order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true iff an existing memo file has been reopened, false if a new one has been created
+     */
+    public boolean reopened() {
+        return reopened;
+    }
+
+    /**
+     * @param index the index of a long in the whole table
+     * @return the chunk that contains the long
+     */
+    private MappedByteBuffer chunk(long index) {
+        if (chunks == null)
+            throw new IllegalStateException("Memo has already been closed");
+        return chunks[(int) (index >>> CHUNK_SHIFT)];
+    }
+
+    @Override
+    public long get(long key) {
+        long index = DenseMemo.index(key, nodeCount);
+        return chunk(index).getLong((int) (index & CHUNK_MASK) * Long.BYTES) - 1; // Stored shifted by one, like DenseMemo
+    }
+
+    @Override
+    public void put(long key, long value) {
+        long index = DenseMemo.index(key, nodeCount);
+        chunk(index).putLong((int) (index & CHUNK_MASK) * Long.BYTES, value + 1);
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (long index = 0; index < DenseMemo.capacity(nodeCount); index++) {
+            long value = chunk(index).getLong((int) (index & CHUNK_MASK) * Long.BYTES);
+            if (value != 0L)
+                action.accept(Grid.pack(index / nodeCount, (int) (index % nodeCount)), value - 1);
+        }
+    }
+
+    @Override
+    public long footprint() {
+        return DenseMemo.bytesFor(nodeCount);
+    }
+
+    /**
+     * Writes all changes to the file and closes it. The mapping is released by the garbage collector.
+     */
+    @Override
+    public void close() {
+        if (chunks == null)
+            return;
+
+        try {
+            for (MappedByteBuffer chunk : chunks)
+                chunk.force();
+            chunks = null;
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
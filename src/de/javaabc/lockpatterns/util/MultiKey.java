@@ -0,0 +1,28 @@
+package de.javaabc.lockpatterns.util;
+
+import java.util.Arrays;
+
+/**
+ * Helper record to use more than one {@link Object} as key.
+ *
+ * @param keys The key objects
+ */
+record MultiKey(Object[] keys) {
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MultiKey multiKey = (MultiKey) o;
+        return Arrays.equals(keys, multiKey.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(keys);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(keys);
+    }
+}
@@ -0,0 +1,66 @@
+package de.javaabc.lockpatterns.util;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * A {@link LongMemo} with the same layout as {@link DenseMemo}, but stored outside the Java heap.
+ * <p>
+ * The table is a single native {@link MemorySegment}, so it can hold more than 2^31 longs and does not put any pressure
+ * on the garbage collector. It is allocated in its own {@link ResourceScope}, the Java 17 form of an arena, and
+ * {@link #close()} closes that scope, which frees the native memory immediately.
+ * The foreign memory API is incubating in Java 17, so run with <code>--add-modules jdk.incubator.foreign</code>.
+ * Note that the JVM limits native segments by <code>-XX:MaxDirectMemorySize</code>, e.g. 5x5 needs at least 6400m.
+ */
+public final class OffHeapMemo implements LongMemo {
+    // The number of nodes in the grid
+    private final int nodeCount;
+
+    // The scope that owns the native memory, shared so that every thread may access the table
+    private final ResourceScope scope;
+
+    // The native table, zeroed on allocation
+    private final MemorySegment table;
+
+    /**
+     * Allocates a new off-heap memo table for every state of a grid with <code>nodeCount</code> nodes.
+     *
+     * @param nodeCount the number of nodes in the grid
+     */
+    public OffHeapMemo(int nodeCount) {
+        this.nodeCount = nodeCount;
+        this.scope = ResourceScope.newSharedScope();
+        this.table = MemorySegment.allocateNative(DenseMemo.capacity(nodeCount) * Long.BYTES, Long.BYTES, scope);
+    }
+
+    @Override
+    public long get(long key) {
+        return MemoryAccess.getLongAtIndex(table, DenseMemo.index(key, nodeCount)) - 1; // Stored shifted by one, like DenseMemo
+    }
+
+    @Override
+    public void put(long key, long value) {
+        MemoryAccess.setLongAtIndex(table, DenseMemo.index(key, nodeCount), value + 1);
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (long index = 0; index < DenseMemo.capacity(nodeCount); index++) {
+            long value = MemoryAccess.getLongAtIndex(table, index);
+            if (value != 0L)
+                action.accept(Grid.pack(index / nodeCount, (int) (index % nodeCount)), value - 1);
+        }
+    }
+
+    @Override
+    public long footprint() {
+        return scope.isAlive() ? table.byteSize() : 0L;
+    }
+
+    @Override
+    public void close() {
+        if (scope.isAlive())
+            scope.close(); // Frees the native memory now, any later access throws an IllegalStateException
+    }
+}
@@ -0,0 +1,156 @@
+package de.javaabc.lockpatterns.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.LongStream;
+
+/**
+ * Helper class to write the entries of a memo to a compact binary file and to read them back.
+ * <p>
+ * The file starts with a magic number, a tag that identifies the computation and the number of entries. The entries
+ * follow sorted by key, where each key is stored as the difference to its predecessor, and both the key differences
+ * and the values are stored as variable-length integers with 7 bits per byte. Since most counts are small, an entry
+ * usually needs only a few bytes.
+ */
+public final class Snapshot {
+    // The value at the start of every snapshot file
+    private static final long MAGIC = 0x4C4F434B534E4150L; // "LOCKSNAP"
+
+    // The size of the buffer for reading and writing
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The maximal number of bytes of a variable-length long
+    private static final int MAX_VAR_LONG_BYTES = 10;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes all entries of a memo to a snapshot file, replacing the file if it exists.
+     *
+     * @param file the path of the snapshot file
+     * @param memo the memo to write
+     * @param tag  an arbitrary number that identifies the computation, e.g. the minimal pattern length
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, LongMemo memo, long tag) throws IOException {
+        LongStream.Builder builder = LongStream.builder();
+        memo.forEach((key, value) -> builder.add(key));
+        long[] keys = builder.build().sorted().toArray();
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putLong(MAGIC).putLong(tag);
+            putVarLong(buffer, keys.length);
+
+            long previous = 0L;
+            for (long key : keys) {
+                if (buffer.remaining() < 2 * MAX_VAR_LONG_BYTES)
+                    flush(channel, buffer);
+                putVarLong(buffer, key - previous);
+                putVarLong(buffer, memo.get(key));
+                previous = key;
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Reads all entries of a snapshot file.
+     *
+     * @param file   the path of the snapshot file
+     * @param tag    the number that identifies the computation, see {@link #write(Path, LongMemo, long)}
+     * @param action the action to perform for every entry, e.g. <code>memo::put</code>
+     * @return the number of entries that have been read
+     * @throws IOException           if the file cannot be read
+     * @throws IllegalStateException if the file is no snapshot or has been written for a different tag
+     */
+    public static long read(Path file, long tag, LongMemo.EntryConsumer action) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+            fill(channel, buffer);
+            if (buffer.remaining() < 2 * Long.BYTES || buffer.getLong() != MAGIC)
+                throw new IllegalStateException(file + " is no snapshot");
+            if (buffer.getLong() != tag)
+                throw new IllegalStateException(file + " has been written for a different computation");
+
+            long count = getVarLong(buffer);
+            long key = 0L;
+            for (long i = 0; i < count; i++) {
+                fill(channel, buffer);
+                key += getVarLong(buffer);
+                action.accept(key, getVarLong(buffer));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Writes a non-negative number with 7 bits per byte, where the highest bit marks that more bytes follow.
+     *
+     * @param buffer the buffer to write to
+     * @param n      the number to write
+     */
+    private static void putVarLong(ByteBuffer buffer, long n) {
+        while ((n & ~0x7FL) != 0L) {
+            buffer.put((byte) (n & 0x7F | 0x80));
+            n >>>= 7;
+        }
+        buffer.put((byte) n);
+    }
+
+    /**
+     * Reads a number written by {@link #putVarLong(ByteBuffer, long)}.
+     *
+     * @param buffer the buffer to read from
+     * @return the number
+     * @throws IOException if the number is truncated
+     */
+    private static long getVarLong(ByteBuffer buffer) throws IOException {
+        long n = 0L;
+        for (int shift = 0; ; shift += 7) {
+            if (!buffer.hasRemaining())
+                throw new EOFException("Truncated snapshot");
+            byte b = buffer.get();
+            n |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return n;
+        }
+    }
+
+    /**
+     * Writes the content of a buffer to a channel and clears the buffer.
+     *
+     * @param channel the channel to write to
+     * @param buffer  the buffer in write mode
+     * @throws IOException if the channel cannot be written
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Reads more bytes from a channel if the buffer might not contain a whole entry anymore.
+     *
+     * @param channel the channel to read from
+     * @param buffer  the buffer in read mode
+     * @throws IOException if the channel cannot be read
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() >= 2 * MAX_VAR_LONG_BYTES)
+            return;
+
+        buffer.compact();
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) <= 0)
+                break;
+        buffer.flip();
+    }
+}
@@ -0,0 +1,150 @@
+package de.javaabc.lockpatterns.util;
+
+/**
+ * Maps every (mask, last node) state of a grid to a dense index within the layer of all masks with the same number of
+ * nodes, using the combinatorial number system.
+ * <p>
+ * A mask with the k nodes p<sub>1</sub> &lt; ... &lt; p<sub>k</sub> (numbered by their position among all nodes of the
+ * grid) has the rank C(p<sub>1</sub>, 1) + ... + C(p<sub>k</sub>, k) among all k-subsets, so the ranks of a layer are
+ * exactly 0 to C(n, k) - 1. The last node is either one of the k nodes of the mask, like the visited masks of
+ * {@link de.javaabc.lockpatterns.dp.Counter}, or one of the n - k other nodes, like the unused masks of the
+ * object-oriented engines, and its position among these completes the index. Every index of a layer therefore belongs
+ * to exactly one state, and no slot is wasted.
+ * <p>
+ * The rank is computed byte by byte: a table holds the sum of the binomials of every byte value for every number of
+ * nodes in the lower bytes, so an index costs one lookup per non-empty byte instead of one per node.
+ */
+public final class StateIndexer {
+    // The number of nodes in the grid
+    private final int nodeCount;
+
+    // The mask of all nodes of the grid, which may have gaps, e.g. with a row stride of 8
+    private final long nodes;
+
+    // Whether the last node is part of the mask or one of the other nodes
+    private final boolean lastInMask;
+
+    // position[i] is the number of grid nodes below the node index i
+    private final int[] position = new int[Long.SIZE];
+
+    // node[p] is the node index of the grid node at position p
+    private final int[] node;
+
+    // binomial[n][k] is the number of k-subsets of an n-set
+    private final long[][] binomial;
+
+    // byteRank[b][v * (nodeCount + 1) + k] is the part of the rank of the nodes v in byte b, with k nodes in lower bytes
+    private final long[][] byteRank = new long[Long.BYTES][];
+
+    /**
+     * Creates a new indexer.
+     *
+     * @param nodes      the mask of all nodes of the grid, e.g. {@link Grid#allNodes()}
+     * @param lastInMask true iff the masks contain the last node
+     */
+    public StateIndexer(long nodes, boolean lastInMask) {
+        this.nodeCount = Long.bitCount(nodes);
+        this.nodes = nodes;
+        this.lastInMask = lastInMask;
+
+        this.node = new int[nodeCount];
+        int p = 0;
+        for (long rest = nodes; rest != 0L; rest &= rest - 1) {
+            int i = Long.numberOfTrailingZeros(rest);
+            position[i] = p;
+            node[p++] = i;
+        }
+
+        this.binomial = new long[nodeCount + 1][nodeCount + 1];
+        for (int n = 0; n <= nodeCount; n++) {
+            binomial[n][0] = 1L;
+            for (int k = 1; k <= n; k++)
+                binomial[n][k] = binomial[n - 1][k - 1] + binomial[n - 1][k];
+        }
+
+        for (int b = 0; b < Long.BYTES; b++) {
+            if ((nodes >>> 8 * b & 0xFF) == 0L)
+                continue;
+
+            byteRank[b] = new long[256 * (nodeCount + 1)];
+            for (int v = 0; v < 256; v++) {
+                if ((v & ~(nodes >>> 8 * b)) != 0L) // Not a set of grid nodes
+                    continue;
+                for (int k = 0; k + Integer.bitCount(v) <= nodeCount; k++) {
+                    long rank = 0L;
+                    int i = k + 1;
+                    for (int rest = v; rest != 0; rest &= rest - 1)
+                        rank += binomial[position[8 * b + Integer.numberOfTrailingZeros(rest)]][i++];
+                    byteRank[b][v * (nodeCount + 1) + k] = rank;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of nodes in the grid, i.e. the largest layer number
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Computes the number of states with a given number of nodes in the mask.
+     *
+     * @param layer the number of nodes in the mask
+     * @return the number of indices of the layer
+     */
+    public long layerSize(int layer) {
+        return binomial[nodeCount][layer] * (lastInMask ? layer : nodeCount - layer);
+    }
+
+    /**
+     * Computes the index of a state within its layer, which is the number of nodes in the mask.
+     *
+     * @param mask a mask of grid nodes
+     * @param last the index of the last node, which must (not) be in the mask according to <code>lastInMask</code>
+     * @return the index of the state, less than {@link #layerSize(int) layerSize(Long.bitCount(mask))}
+     */
+    public long index(long mask, int last) {
+        long rank = 0L;
+        int k = 0;
+        int b = 0;
+        for (long rest = mask; rest != 0L; rest >>>= 8, b++) {
+            int v = (int) rest & 0xFF;
+            if (v != 0) {
+                rank += byteRank[b][v * (nodeCount + 1) + k];
+                k += Integer.bitCount(v);
+            }
+        }
+
+        long choices = lastInMask ? mask : nodes & ~mask;
+        return rank * Long.bitCount(choices) + Long.bitCount(choices & ((1L << last) - 1));
+    }
+
+    /**
+     * Computes the state of an index, i.e. the inverse of {@link #index(long, int)}.
+     *
+     * @param layer the number of nodes in the mask
+     * @param index the index of the state within the layer
+     * @return the state, packed by {@link Grid#pack(long, int)}
+     */
+    public long state(int layer, long index) {
+        long width = lastInMask ? layer : nodeCount - layer;
+        long rank = index / width;
+
+        long mask = 0L;
+        int p = nodeCount - 1;
+        for (int i = layer; i > 0; i--) { // Greedily take the largest position whose binomial still fits
+            while (binomial[p][i] > rank)
+                p--;
+            mask |= 1L << node[p];
+            rank -= binomial[p][i];
+            p--;
+        }
+
+        long choices = lastInMask ? mask : nodes & ~mask;
+        for (long skip = index % width; skip > 0; skip--)
+            choices &= choices - 1;
+        return Grid.pack(mask, Long.numberOfTrailingZeros(choices));
+    }
+}
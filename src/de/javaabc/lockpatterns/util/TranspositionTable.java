@@ -0,0 +1,87 @@
+package de.javaabc.lockpatterns.util;
+
+/**
+ * A lossy {@link LongMemo} of fixed size, like the transposition tables of chess engines.
+ * <p>
+ * The table never grows: it consists of a power-of-two number of buckets with two entries each, stored next to each
+ * other in one <code>long[]</code>, so a lookup probes a single cache line. The first entry of a bucket prefers deep
+ * subtrees, i.e. it keeps the entry with the larger count because that one was the most expensive to compute. The
+ * second entry always takes the newest value. An entry that is replaced is simply computed again when it is needed,
+ * so results stay exact while the memory stays exactly at the configured size.
+ * <p>
+ * This table is not thread-safe. The key <code>-1</code> is not supported.
+ */
+public final class TranspositionTable implements LongMemo {
+    // The number of longs per bucket: deep key, deep value, recent key, recent value
+    private static final int BUCKET_LONGS = 4;
+
+    // The maximal number of buckets, such that the table still fits into one array (8 GiB)
+    private static final long MAX_BUCKETS = 1L << 28;
+
+    // The buckets, with keys shifted by one so that 0 marks an empty entry
+    private final long[] table;
+
+    // The number of bits of a bucket index
+    private final int bits;
+
+    /**
+     * Creates a new table.
+     *
+     * @param bytes the memory budget, rounded down to a power of two of at least one bucket and at most 8 GiB
+     */
+    public TranspositionTable(long bytes) {
+        long buckets = Math.max(1L, Long.highestOneBit(bytes / (BUCKET_LONGS * Long.BYTES)));
+        buckets = Math.min(buckets, MAX_BUCKETS);
+
+        this.bits = Long.numberOfTrailingZeros(buckets);
+        this.table = new long[(int) buckets * BUCKET_LONGS];
+    }
+
+    /**
+     * Computes the position of the bucket of a key by Fibonacci hashing.
+     *
+     * @param key the key, shifted by one
+     * @return the index of the first long of the bucket
+     */
+    private int bucket(long key) {
+        return bits == 0 ? 0 : (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits)) * BUCKET_LONGS;
+    }
+
+    @Override
+    public long get(long key) {
+        int b = bucket(key + 1);
+        if (table[b] == key + 1)
+            return table[b + 1];
+        if (table[b + 2] == key + 1)
+            return table[b + 3];
+        return MISSING;
+    }
+
+    @Override
+    public void put(long key, long value) {
+        int b = bucket(key + 1);
+        if (table[b] == key + 1) {
+            table[b + 1] = value;
+        } else if (table[b] == 0L || value >= table[b + 1]) { // Deeper than the deep entry, which becomes the recent one
+            table[b + 2] = table[b];
+            table[b + 3] = table[b + 1];
+            table[b] = key + 1;
+            table[b + 1] = value;
+        } else { // Always replace the recent entry
+            table[b + 2] = key + 1;
+            table[b + 3] = value;
+        }
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < table.length; i += 2)
+            if (table[i] != 0L)
+                action.accept(table[i] - 1, table[i + 1]);
+    }
+
+    @Override
+    public long footprint() {
+        return (long) table.length * Long.BYTES;
+    }
+}